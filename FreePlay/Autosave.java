@@ -0,0 +1,176 @@
+import java.awt.Point;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Autosave — saves the document from a background thread.
+ *
+ * snapshot() runs on the EDT and costs O(shapes / 1024) (ShapeList shares its chunks). Shapes are
+ * edited in place (move, image resize), so CanvasView reports such edits first (willChange) and
+ * the snapshot keeps a copy of the old shape for the writer. The file is written next to the
+ * target, fsync'ed and renamed over it, so a crash leaves either the old or the new file.
+ * With a Journal attached the snapshot is a checkpoint: it starts the next journal file and the
+ * saved file names that generation.
+ */
+public final class Autosave {
+
+    private Autosave() {}
+
+    /** Bytes written and time taken (EDT part = the snapshot, the rest ran on the writer thread). */
+    record Result(int shapes, long bytes, long snapshotNanos, long writeNanos) {
+        @Override public String toString() {
+            return String.format("%d shapes, %.1f KB, snapshot %.2f ms, write %.1f ms",
+                    shapes, bytes / 1024.0, snapshotNanos / 1e6, writeNanos / 1e6);
+        }
+    }
+
+    /** The document as it was when taken. */
+    static final class Snapshot {
+        private final canvasex.ProjectData view;        // settings only, no shapes
+        private final List<canvasex.DrawingShape> shapes;
+        private final long nanos;
+        private final long journalGen;                  // first journal not in this snapshot (0 = none)
+        // shapes changed in place after the snapshot -> their state at snapshot time
+        private final Map<canvasex.DrawingShape, canvasex.DrawingShape> frozen = new IdentityHashMap<>();
+        private boolean done;
+
+        private Snapshot(canvasex.ProjectData view, List<canvasex.DrawingShape> shapes, long nanos, long journalGen) {
+            this.view = view; this.shapes = shapes; this.nanos = nanos; this.journalGen = journalGen;
+        }
+
+        int size() { return shapes.size(); }
+
+        long journalGen() { return journalGen; }
+
+        /** EDT, before s is changed in place. Blocks at most while the writer encodes one shape. */
+        synchronized void willChange(canvasex.DrawingShape s) {
+            if (!done && !frozen.containsKey(s)) frozen.put(s, copy(s));
+        }
+
+        private synchronized void finished() {
+            done = true;
+            frozen.clear();
+        }
+    }
+
+    static Snapshot snapshot(canvasex.CanvasView cv) {
+        long t0 = System.nanoTime();
+        long gen = cv.journal != null ? cv.journal.rotate() : 0;
+        canvasex.ProjectData view = new canvasex.ProjectData(List.of(), cv.scale, cv.offX, cv.offY,
+                cv.penSize, cv.color, cv.textColor, cv.fontSize, cv.fontFamily, cv.fontStyle);
+        return new Snapshot(view, cv.shapes.snapshot(), System.nanoTime() - t0, gen);
+    }
+
+    /** Writes snap to file (temp file + fsync + atomic rename); any thread. */
+    static Result write(Snapshot snap, File file) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            long bytes = replace(file, out -> {
+                try (ProjectFormat.Writer w = new ProjectFormat.Writer(out)) {
+                    w.view(snap.view);
+                    if (snap.journalGen > 0) w.generation(snap.journalGen);
+                    for (canvasex.DrawingShape s : snap.shapes) {
+                        // image bytes may still be encoding: wait outside the lock
+                        byte[] img = s instanceof canvasex.CanvasView.ImageShape im ? im.bytes() : null;
+                        synchronized (snap) {
+                            canvasex.DrawingShape t = snap.frozen.getOrDefault(s, s);
+                            if (t != s && t instanceof canvasex.CanvasView.ImageShape c && c.imgBytes == null) c.imgBytes = img;
+                            w.shape(t);
+                        }
+                    }
+                }
+            });
+            return new Result(snap.size(), bytes, snap.nanos, System.nanoTime() - t0);
+        } finally {
+            snap.finished();
+        }
+    }
+
+    interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes body to a temp file beside file, forces it to disk and renames it over file.
+     * Returns the file size. The temp file is removed if anything fails.
+     */
+    static long replace(File file, Body body) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path dir = target.getParent();
+        Path tmp = createTemp(dir, file.getName());
+        try {
+            // the renamed file keeps the permissions of the one it replaces
+            if (Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException ex) {
+                    // not POSIX (Windows): the new file inherits the directory's ACL
+                }
+            }
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+                body.write(new OutputStream() {   // body closes this; fsync + close happen below
+                    @Override public void write(int b) throws IOException { fos.write(b); }
+                    @Override public void write(byte[] b, int off, int len) throws IOException { fos.write(b, off, len); }
+                });
+                fos.getFD().sync();
+            }
+            long bytes = Files.size(tmp);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDir(dir);
+            return bytes;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // default permissions (umask), unlike createTempFile's owner-only ones
+    private static Path createTemp(Path dir, String name) throws IOException {
+        while (true) {
+            Path tmp = dir.resolve(name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(tmp);
+            } catch (FileAlreadyExistsException ex) {
+                // taken, try another name
+            }
+        }
+    }
+
+    // make the rename itself durable (POSIX); not possible on Windows, where the move is enough
+    private static void syncDir(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {}
+    }
+
+    // shape state as it is now, sharing nothing that is changed in place
+    static canvasex.DrawingShape copy(canvasex.DrawingShape s) {
+        if (s instanceof canvasex.LineShape l) return new canvasex.LineShape(new Point(l.a), new Point(l.b), l.style);
+        if (s instanceof canvasex.RectShape r) return new canvasex.RectShape(new Point(r.a), new Point(r.b), r.style);
+        if (s instanceof canvasex.OvalShape o) return new canvasex.OvalShape(new Point(o.a), new Point(o.b), o.style);
+        if (s instanceof canvasex.StrokeShape st) return new canvasex.StrokeShape(st.xy.clone(), st.n, st.style);
+        if (s instanceof canvasex.TextShape t) return new canvasex.TextShape(t.text, new Point(t.pos), t.style);
+        if (s instanceof canvasex.CanvasView.ImageShape im) {
+            canvasex.CanvasView.ImageShape c = new canvasex.CanvasView.ImageShape(im.x, im.y, im.width, im.height);
+            c.imgBytes = im.imgBytes;   // bytes never change (still encoding: write() fills them in)
+            return c;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,61 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.imageio.ImageIO;
+
+/**
+ * AutosaveSnapshot — a picture of the canvas taken with every autosave, shown at startup
+ * while the autosave itself is still being deserialized.
+ * File: magic, size + mtime of the autosave it belongs to (a stale picture is ignored),
+ * the device scale and view (scale, offX, offY) it was rendered at, and the PNG.
+ */
+public final class AutosaveSnapshot {
+
+    private AutosaveSnapshot() {}
+
+    private static final int MAGIC = 0x46505331; // "FPS1"
+
+    /** img pixel (x, y) shows world ((x / devScale - offX) / scale, (y / devScale - offY) / scale). */
+    record Snapshot(BufferedImage img, double devScale, double scale, double offX, double offY) {}
+
+    /** Writes the snapshot for doc (as it is on disk right now); best effort, replaced like the autosave. */
+    static void write(File file, File doc, Snapshot s) {
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream(1 << 16);
+            ImageIO.write(s.img, "png", png);
+            Autosave.replace(file, o -> {
+                try (DataOutputStream out = new DataOutputStream(o)) {
+                    out.writeInt(MAGIC);
+                    out.writeLong(doc.length());
+                    out.writeLong(doc.lastModified());
+                    out.writeDouble(s.devScale);
+                    out.writeDouble(s.scale);
+                    out.writeDouble(s.offX);
+                    out.writeDouble(s.offY);
+                    png.writeTo(out);
+                }
+            });
+        } catch (IOException ex) {
+            System.err.println("Error writing snapshot " + file.getAbsolutePath() + ": " + ex.getMessage());
+        }
+    }
+
+    /** Snapshot of doc, or null if there is none or it was taken of another version. */
+    static Snapshot read(File file, File doc) {
+        if (!file.isFile() || !doc.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC) return null;
+            if (in.readLong() != doc.length() || in.readLong() != doc.lastModified()) return null;
+            double devScale = in.readDouble(), scale = in.readDouble(), offX = in.readDouble(), offY = in.readDouble();
+            BufferedImage img = ImageIO.read(in);
+            return img == null ? null : new Snapshot(img, devScale, scale, offX, offY);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ChromeCache — pre-rendered backgrounds (shadow, fill, hover ring ...) of the custom controls.
+ * Each control state is rendered once per device scale into a small template whose
+ * stretchable axes have a uniform middle strip; painting a control is then up to nine
+ * blits (nine-patch) at any size. An axis whose corners would meet (e.g. a pill's height)
+ * is not stretched and becomes part of the key instead. Swing/EDT use only.
+ */
+public final class ChromeCache {
+
+    private ChromeCache() {}
+
+    /** Paints one state of the chrome into a w x h area (user space, origin 0,0). */
+    interface Painter { void paint(Graphics2D g, double w, double h); }
+
+    private static final int MAX_ENTRIES = 128;
+    private static final int MIDDLE = 4;   // width of the stretched strip in the template (user px)
+
+    // argb: the graphics' colour on entry (the shadow is painted in it, as before the cache)
+    // fx/fy: sub-pixel phase of the device origin (e.g. odd positions at 150%)
+    private record Key(String state, int tw, int th, double sx, double sy, double fx, double fy, int argb) {}
+
+    private static final LinkedHashMap<Key, BufferedImage> templates = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> e) { return size() > MAX_ENTRIES; }
+    };
+
+    /**
+     * Paints the chrome for state at (x, y, w, h) in g's user space.
+     * cornerX / cornerY are the non-stretchable margins (corners incl. shadow) in user px.
+     */
+    static void paint(Graphics2D g, String state, int x, int y, int w, int h, int cornerX, int cornerY, Painter p) {
+        if (w <= 0 || h <= 0) return;
+        AffineTransform t = g.getTransform();
+        double sx = t.getScaleX(), sy = t.getScaleY();
+        if (t.getShearX() != 0 || t.getShearY() != 0 || sx <= 0 || sy <= 0) {
+            // rotated/flipped graphics (never for the chrome): paint directly
+            Graphics2D d = (Graphics2D) g.create();
+            d.translate(x, y);
+            p.paint(d, w, h);
+            d.dispose();
+            return;
+        }
+        int tw = Math.min(w, 2 * cornerX + MIDDLE), th = Math.min(h, 2 * cornerY + MIDDLE);
+        double ox = t.getTranslateX() + x * sx, oy = t.getTranslateY() + y * sy;
+        int dx0 = (int) Math.floor(ox + 1e-6), dy0 = (int) Math.floor(oy + 1e-6);
+        double fx = Math.max(0, ox - dx0), fy = Math.max(0, oy - dy0);
+        Key k = new Key(state, tw, th, sx, sy, fx, fy, g.getColor().getRGB());
+        BufferedImage img = templates.get(k);
+        if (img == null) {
+            img = render(p, tw, th, sx, sy, fx, fy, g.getColor());
+            templates.put(k, img);
+        }
+
+        // device pixel rects (blit with identity transform so HiDPI stays crisp)
+        int dw = tw == w ? img.getWidth() : (int) Math.ceil(w * sx + fx);
+        int dh = th == h ? img.getHeight() : (int) Math.ceil(h * sy + fy);
+        int cx = tw == w ? 0 : Math.min((int) Math.ceil(cornerX * sx), img.getWidth() / 2);
+        int cy = th == h ? 0 : Math.min((int) Math.ceil(cornerY * sy), img.getHeight() / 2);
+
+        Object oldInterp = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setTransform(new AffineTransform());
+        if (cx == 0 && cy == 0) {
+            g.drawImage(img, dx0, dy0, null);
+        } else {
+            int[] sxs = cuts(img.getWidth(), cx), sys = cuts(img.getHeight(), cy);
+            int[] dxs = cuts(dw, cx), dys = cuts(dh, cy);
+            for (int j = 0; j < 3; j++) {
+                if (sys[j + 1] <= sys[j] || dys[j + 1] <= dys[j]) continue;
+                for (int i = 0; i < 3; i++) {
+                    if (sxs[i + 1] <= sxs[i] || dxs[i + 1] <= dxs[i]) continue;
+                    g.drawImage(img, dx0 + dxs[i], dy0 + dys[j], dx0 + dxs[i + 1], dy0 + dys[j + 1],
+                            sxs[i], sys[j], sxs[i + 1], sys[j + 1], null);
+                }
+            }
+        }
+        g.setTransform(t);
+        if (oldInterp != null) g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterp);
+    }
+
+    // slice edges along one axis: [0, c, size - c, size] (c = 0 -> one slice)
+    private static int[] cuts(int size, int c) {
+        return c == 0 ? new int[] { 0, size, size, size } : new int[] { 0, c, size - c, size };
+    }
+
+    private static BufferedImage render(Painter p, int tw, int th, double sx, double sy, double fx, double fy, java.awt.Color c) {
+        int iw = Math.max(1, (int) Math.ceil(tw * sx + fx)), ih = Math.max(1, (int) Math.ceil(th * sy + fy));
+        BufferedImage img = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(c);
+        g.translate(fx, fy);
+        g.scale(sx, sy);
+        p.paint(g, tw, th);
+        g.dispose();
+        return img;
+    }
+
+    /** Drops all templates (e.g. after a look-and-feel or screen change). */
+    static void clear() { templates.clear(); }
+}
@@ -0,0 +1,328 @@
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ChunkStore — keeps the parts of a large document that are far from the view on disk, so memory
+ * stays bounded however far the user draws.
+ *
+ * World space is cut into CHUNK x CHUNK squares. Once more than PAGE_MIN shapes are in memory,
+ * the pager (CanvasView.startPaging, every PAGE_MS on the EDT) looks for runs of consecutive shapes
+ * (paint order) outside the chunks around the view (KEEP more on every side); a run is cut where
+ * the drawing leaves a CHUNK square, as project sections are (ProjectFormat). Each run is written
+ * to the store file as one self-contained record (image bytes, styles, shape records as in
+ * ProjectFormat) and replaced by a Run, a ShapeSection that keeps the run's place in the paint
+ * order: rendering, picking (CanvasView.expand), saving and the journal's document indices work on
+ * it as on a mapped project section. A run right after a Run whose square it stays in is merged
+ * into it, so drawing in one place keeps one record there.
+ *
+ * Sections near the view (mapped or paged out) are decoded ahead of time on the chunk-io thread;
+ * far ones drop their decoded shapes. Both are clean by construction: a Run's bytes never change,
+ * edits happen to expanded shapes, which are paged out again once they are far.
+ *
+ * A Run that leaves the document (expanded, cleared) gives its records back (release). They are
+ * reused once no autosave can still be reading them: new records go into the first free extent
+ * that fits, neighbouring free extents are joined, and a free extent at the end shortens the file.
+ *
+ * The store is a scratch file for this session (deleted on exit); the document itself is saved
+ * by the autosave and the journal as before.
+ */
+public final class ChunkStore {
+
+    static final int CHUNK = 4096;          // world units
+    static final int KEEP = 2;              // chunks around the view that stay in memory
+    static final int PAGE_MS = 2000;
+    static final int PAGE_MIN = 20_000;     // shapes in memory before anything is paged out
+    private static final int MIN_RUN = 16;
+    private static final int RUN_SHAPES = 4096;
+
+    // reads ahead + appends; one thread, records are written in order
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chunk-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final File file;
+    private final FileChannel ch;
+    private long end;   // EDT: records get their place when they are encoded
+    private final TreeMap<Long, Long> free = new TreeMap<>();   // EDT: offset -> length, joined
+    private final List<Record> released = new ArrayList<>();    // EDT: out of the document, not yet free
+    private Rectangle lastKeep;
+    private int lastVersion;
+
+    private ChunkStore(File file, FileChannel ch) {
+        this.file = file;
+        this.ch = ch;
+    }
+
+    /** A new, empty store in the temp directory. */
+    static ChunkStore create() throws IOException {
+        File f = Files.createTempFile("freeplay-chunks-", ".fpc").toFile();
+        f.deleteOnExit();
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        return new ChunkStore(f, ch);
+    }
+
+    // world rectangle r grown to whole chunks, plus n chunks on every side
+    static Rectangle chunks(Rectangle r, int n) {
+        int x0 = Math.floorDiv(r.x, CHUNK) - n, y0 = Math.floorDiv(r.y, CHUNK) - n;
+        int x1 = Math.floorDiv(r.x + r.width, CHUNK) + n + 1, y1 = Math.floorDiv(r.y + r.height, CHUNK) + n + 1;
+        return new Rectangle(x0 * CHUNK, y0 * CHUNK, (x1 - x0) * CHUNK, (y1 - y0) * CHUNK);
+    }
+
+    /** One pager tick (EDT): writes far runs out, decodes near sections, drops far decoded ones. */
+    void page(canvasex.CanvasView cv) {
+        // a running autosave may still read released runs
+        if (!released.isEmpty() && cv.saving == null) reclaim();
+        if (cv.getWidth() <= 0 || cv.getHeight() <= 0) return;
+        Rectangle view = cv.screenToWorld(new Rectangle(0, 0, cv.getWidth(), cv.getHeight()));
+        Rectangle keep = chunks(view, KEEP);
+        // the whole list is looked at: only after the view left its chunks or enough edits
+        boolean due = !keep.equals(lastKeep) || cv.docVersion - lastVersion >= PAGE_MIN / 10;
+        if (due && cv.shapes.size() - cv.lazySections > PAGE_MIN) {
+            lastKeep = keep;
+            lastVersion = cv.docVersion;
+            // moves are logged by list index: log them before the shapes leave the list
+            if (cv.journal != null) cv.journal.commit();
+            pageOut(cv, keep);
+        }
+        if (cv.lazySections == 0) return;
+        for (canvasex.DrawingShape s : cv.index.query(chunks(view, 1))) {
+            if (s instanceof ShapeSection sec && sec.decoded().isEmpty()) IO.execute(() -> load(sec));
+        }
+        for (canvasex.DrawingShape s : cv.shapes) {
+            if (s instanceof ShapeSection sec && !sec.getBounds().intersects(keep)) sec.drop();
+        }
+    }
+
+    /** sec left the document (EDT): its records are freed by a later page tick. */
+    void release(ShapeSection sec) {
+        if (sec instanceof Run r && r.store() == this) released.addAll(Arrays.asList(r.records));
+    }
+
+    private void reclaim() {
+        for (Record r : released) {
+            long at = r.offset, len = r.length;
+            Map.Entry<Long, Long> before = free.lowerEntry(at);
+            if (before != null && before.getKey() + before.getValue() == at) {
+                at = before.getKey();
+                len += before.getValue();
+            }
+            Long after = free.remove(r.offset + r.length);
+            if (after != null) len += after;
+            free.put(at, len);
+        }
+        released.clear();
+        Map.Entry<Long, Long> last = free.lastEntry();
+        if (last != null && last.getKey() + last.getValue() == end) {
+            free.remove(last.getKey());
+            long size = end = last.getKey();
+            IO.execute(() -> truncate(size));
+        }
+    }
+
+    // first free extent that fits, else the end of the file
+    private long allocate(int length) {
+        for (Map.Entry<Long, Long> e : free.entrySet()) {
+            long at = e.getKey(), len = e.getValue();
+            if (len < length) continue;
+            free.remove(at);
+            if (len > length) free.put(at + length, len - length);
+            return at;
+        }
+        long at = end;
+        end += length;
+        return at;
+    }
+
+    private static void load(ShapeSection sec) {
+        for (canvasex.DrawingShape t : sec.shapes()) {
+            if (t instanceof canvasex.CanvasView.ImageShape im) im.requestDecode();
+        }
+    }
+
+    private void pageOut(canvasex.CanvasView cv, Rectangle keep) {
+        int n = cv.shapes.size();
+        List<canvasex.DrawingShape> order = new ArrayList<>(n);
+        Map<ShapeSection, List<canvasex.DrawingShape>> runs = new LinkedHashMap<>();
+        List<canvasex.DrawingShape> run = new ArrayList<>();
+        for (int i = 0; i < n; ) {
+            run.clear();
+            Rectangle box = null;
+            while (i < n && run.size() < RUN_SHAPES) {
+                canvasex.DrawingShape t = cv.shapes.get(i);
+                Rectangle b = t.getBounds();
+                // a short run takes in a stray shape rather than stopping at it
+                if (!pageable(cv, t, b, keep) || run.size() >= MIN_RUN && !near(box, b, CHUNK)) break;
+                if (box == null) box = b; else box.add(b);
+                run.add(t);
+                i++;
+            }
+            if (run.isEmpty()) { order.add(cv.shapes.get(i++)); continue; }
+            // a Run right before that the drawing has not left: the run's record joins it
+            Run prev = !order.isEmpty() && order.get(order.size() - 1) instanceof Run last
+                    && last.count + run.size() <= RUN_SHAPES && near(last.getBounds(), box, 2 * CHUNK) ? last : null;
+            if (prev == null && run.size() < MIN_RUN) { order.addAll(run); continue; }
+            List<canvasex.DrawingShape> parts = new ArrayList<>(run.size() + 1);
+            Record rec = write(run);
+            Run r;
+            if (prev != null) {
+                // written this tick: its parts are still in the list and index, not prev
+                List<canvasex.DrawingShape> before = runs.remove(prev);
+                if (before != null) parts.addAll(before); else parts.add(prev);
+                order.remove(order.size() - 1);
+                Record[] recs = Arrays.copyOf(prev.records, prev.records.length + 1);
+                recs[recs.length - 1] = rec;
+                box.add(prev.getBounds());
+                r = new Run(recs, prev.count + run.size(), box);
+            } else {
+                r = new Run(new Record[] { rec }, run.size(), box);
+            }
+            parts.addAll(run);
+            runs.put(r, parts);
+            order.add(r);
+        }
+        if (!runs.isEmpty()) cv.collapse(order, runs);
+    }
+
+    // b added to box still fits in a square of the given size
+    private static boolean near(Rectangle box, Rectangle b, int size) {
+        return Math.max(box.x + box.width, b.x + b.width) - Math.min(box.x, b.x) <= size
+                && Math.max(box.y + box.height, b.y + b.height) - Math.min(box.y, b.y) <= size;
+    }
+
+    // shapes the format can store, not selected, outside keep; images only once their bytes are there
+    private static boolean pageable(canvasex.CanvasView cv, canvasex.DrawingShape s, Rectangle b, Rectangle keep) {
+        if (s == cv.selectedShape || b.intersects(keep)) return false;
+        if (s instanceof canvasex.CanvasView.ImageShape im) return im.bytesNow() != null;
+        return s instanceof canvasex.StrokeShape || s instanceof canvasex.LineShape || s instanceof canvasex.RectShape
+                || s instanceof canvasex.OvalShape || s instanceof canvasex.TextShape;
+    }
+
+    // record: blobs (id, bytes), STYLES payload, shape count + records
+    private Record write(List<canvasex.DrawingShape> shapes) {
+        ProjectFormat.Encoder enc = new ProjectFormat.Encoder(4096);
+        ProjectFormat.Bytes blobs = new ProjectFormat.Bytes(64);
+        Map<byte[], Integer> ids = new IdentityHashMap<>();
+        for (canvasex.DrawingShape s : shapes) {
+            int blob = 0;
+            if (s instanceof canvasex.CanvasView.ImageShape im) {
+                byte[] b = im.bytesNow();
+                Integer id = ids.get(b);
+                if (id == null) {
+                    ids.put(b, id = ids.size() + 1);
+                    blobs.varint(id);
+                    blobs.varint(b.length);
+                    blobs.write(b, 0, b.length);
+                }
+                blob = id;
+            }
+            enc.shape(s, blob);
+        }
+        ProjectFormat.Bytes rec = new ProjectFormat.Bytes(blobs.size() + enc.styles.size() + enc.records.size() + 16);
+        rec.varint(ids.size());
+        rec.write(blobs.buf, 0, blobs.size());
+        enc.takeStyles(rec);
+        rec.varint(shapes.size());
+        rec.write(enc.records.buf, 0, enc.records.size());
+
+        Record r = new Record(allocate(rec.size()), Arrays.copyOf(rec.buf, rec.size()));
+        IO.execute(() -> append(r));
+        return r;
+    }
+
+    // IO thread, in order: reads and writes of an extent's old record were queued before its reuse
+    private void truncate(long size) {
+        try {
+            ch.truncate(size);
+        } catch (IOException ex) {
+            System.err.println("Error truncating " + file.getAbsolutePath() + ": " + ex.getMessage());
+        }
+    }
+
+    // IO thread; on failure the record just stays in memory
+    private void append(Record r) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(r.bytes);
+            for (long at = r.offset; buf.hasRemaining(); ) at += ch.write(buf, at);
+            r.bytes = null;
+        } catch (IOException ex) {
+            System.err.println("Error writing " + file.getAbsolutePath() + ": " + ex.getMessage());
+        }
+    }
+
+    // any thread
+    private void read(Record r, List<canvasex.DrawingShape> out) throws IOException {
+        byte[] b = r.bytes;
+        if (b == null) {
+            ByteBuffer buf = ByteBuffer.allocate(r.length);
+            for (long at = r.offset; buf.hasRemaining(); ) {
+                int k = ch.read(buf, at);
+                if (k < 0) throw new IOException("record cut short");
+                at += k;
+            }
+            b = buf.array();
+        }
+        ProjectFormat.Decoder d = new ProjectFormat.Decoder();
+        d.reset(b);
+        for (int k = d.varint(); k > 0; k--) {
+            int id = d.varint(), len = d.varint();
+            d.blob(id, Arrays.copyOfRange(b, d.pos, d.pos + len));
+            d.pos += len;
+        }
+        d.styles();
+        for (int k = d.varint(); k > 0; k--) out.add(d.shape());
+    }
+
+    /** One record; its bytes stay in memory until they are written. */
+    private static final class Record {
+        final long offset;
+        final int length;
+        volatile byte[] bytes;
+
+        Record(long offset, byte[] bytes) {
+            this.offset = offset;
+            this.length = bytes.length;
+            this.bytes = bytes;
+        }
+    }
+
+    /** A run of shapes paged out to the store: one record per page-out that added to it. */
+    final class Run extends ShapeSection {
+        private final Record[] records;
+
+        private Run(Record[] records, int count, Rectangle bounds) {
+            super(count, bounds);
+            this.records = records;
+        }
+
+        private ChunkStore store() { return ChunkStore.this; }
+
+        @Override List<canvasex.DrawingShape> read() {
+            List<canvasex.DrawingShape> out = new ArrayList<>(count);
+            for (Record r : records) {
+                try {
+                    ChunkStore.this.read(r, out);
+                } catch (IOException ex) {
+                    System.err.println("Error reading " + file.getAbsolutePath() + " at " + r.offset + ": " + ex.getMessage());
+                }
+            }
+            return out;
+        }
+    }
+}
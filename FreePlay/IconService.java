@@ -0,0 +1,157 @@
+import java.awt.GraphicsEnvironment;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+
+/**
+ * IconService — rasterized SVG icons, one per file / size / screen scale.
+ * Icons are kept in memory and in a disk cache (~/.freeplay/icon-cache) named by the
+ * SHA-256 of the SVG content and the pixel size, so edited SVGs are re-rasterized and
+ * warm starts skip Batik entirely. Batik renders straight into a BufferedImage
+ * (no PNG encode/decode in between). preload() rasterizes the toolbar icons in
+ * parallel while the UI is still being built.
+ */
+public final class IconService {
+
+    private IconService() {}
+
+    private static final Path DISK_CACHE = Paths.get(System.getProperty("user.home"), ".freeplay", "icon-cache");
+
+    private record Key(String path, int size, double scale) {}
+
+    private static final Map<Key, CompletableFuture<BufferedImage>> icons = new ConcurrentHashMap<>();
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+                Thread t = new Thread(r, "icon-loader");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private static volatile double screenScale = -1;
+
+    /** Device scale of the default screen (1.0 headless or when unknown). */
+    static double screenScale() {
+        double s = screenScale;
+        if (s < 0) {
+            s = 1.0;
+            try {
+                if (!GraphicsEnvironment.isHeadless()) {
+                    AffineTransform d2d = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                            .getDefaultConfiguration().getDefaultTransform();
+                    s = Math.max(1.0, Math.max(d2d.getScaleX(), d2d.getScaleY()));
+                }
+            } catch (Exception ignored) {}
+            screenScale = s;
+        }
+        return s;
+    }
+
+    /** Icon at size x size user px for the screen scale; null if the SVG can't be read. Blocks until ready. */
+    static BufferedImage icon(String path, int size) { return icon(path, size, screenScale()); }
+
+    static BufferedImage icon(String path, int size, double scale) {
+        try {
+            return request(path, size, scale).join();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Starts rasterizing every SVG in paths at each size in the background. */
+    static void preload(List<String> paths, int... sizes) {
+        double scale = screenScale();
+        for (String p : paths) for (int size : sizes) request(p, size, scale);
+    }
+
+    /** All .svg files of a directory (relative paths, as used by the buttons). */
+    static List<String> svgFiles(String dir) {
+        List<String> out = new ArrayList<>();
+        File[] files = new File(dir).listFiles((d, n) -> n.toLowerCase().endsWith(".svg"));
+        if (files != null) for (File f : files) out.add(dir + "/" + f.getName());
+        return out;
+    }
+
+    private static CompletableFuture<BufferedImage> request(String path, int size, double scale) {
+        return icons.computeIfAbsent(new Key(path, size, scale),
+                k -> CompletableFuture.supplyAsync(() -> load(k), POOL));
+    }
+
+    private static BufferedImage load(Key k) {
+        try {
+            byte[] svg = Files.readAllBytes(Paths.get(k.path));
+            int px = (int) Math.ceil(k.size * k.scale);
+            Path cached = DISK_CACHE.resolve(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(svg)) + "_" + px + ".png");
+            if (Files.isRegularFile(cached)) {
+                BufferedImage img = ImageIO.read(cached.toFile());
+                if (img != null) return img;
+            }
+            BufferedImage img = rasterize(svg, px);
+            store(cached, img);
+            return img;
+        } catch (Exception e) {
+            throw new RuntimeException("icon " + k.path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static BufferedImage rasterize(byte[] svg, int px) throws TranscoderException {
+        BufferedImage[] result = new BufferedImage[1];
+        ImageTranscoder t = new ImageTranscoder() {
+            @Override public BufferedImage createImage(int w, int h) {
+                return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            }
+            @Override public void writeImage(BufferedImage img, TranscoderOutput out) {
+                result[0] = img;
+            }
+        };
+        t.addTranscodingHint(ImageTranscoder.KEY_WIDTH, (float) px);
+        t.addTranscodingHint(ImageTranscoder.KEY_HEIGHT, (float) px);
+        t.transcode(new TranscoderInput(new ByteArrayInputStream(svg)), new TranscoderOutput());
+        if (result[0] == null) throw new TranscoderException("no image");
+        return result[0];
+    }
+
+    // best effort: write to a temp file and move it in place so readers never see half a PNG;
+    // the temp file never stays behind in the cache directory
+    private static void store(Path target, BufferedImage img) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            tmp = Files.createTempFile(target.getParent(), "icon", ".tmp");
+            ImageIO.write(img, "png", tmp.toFile());
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ignored) {
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * ImageMipCache — pre-scaled copies of large images (mip pyramid).
+ * Level k is the source halved k times with a 2x2 box filter on premultiplied pixels,
+ * so drawing a zoomed-out photo only rescales by less than 2x instead of from full size.
+ * Levels are built on a background thread; listeners hear when an image got a new level.
+ * Pyramids are evicted LRU once their pixels exceed a byte budget (level 0 is the source
+ * itself and not counted).
+ */
+public final class ImageMipCache {
+
+    private ImageMipCache() {}
+
+    private static final long BUDGET_BYTES = 96L << 20;
+    private static final int MIN_LEVEL_PX = 16;
+
+    private static final class Pyramid {
+        volatile BufferedImage[] levels;   // [0] = source; grows copy-on-write
+        int wanted;                        // deepest level requested so far
+        boolean building;
+        long bytes;
+        Pyramid(BufferedImage src) { levels = new BufferedImage[] { src }; }
+    }
+
+    // keys are compared by identity (BufferedImage does not override equals)
+    private static final LinkedHashMap<BufferedImage, Pyramid> pyramids = new LinkedHashMap<>(16, 0.75f, true);
+    private static long usedBytes = 0;
+    private static final List<Consumer<BufferedImage>> listeners = new ArrayList<>();
+
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "mip-builder");
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+
+    /** Called (on the builder thread) with the source image whenever one of its levels becomes available. */
+    static synchronized void addListener(Consumer<BufferedImage> l) { listeners.add(l); }
+
+    static synchronized void removeListener(Consumer<BufferedImage> l) { listeners.remove(l); }
+
+    /**
+     * Best image to draw src at roughly targetW x targetH device pixels:
+     * the smallest level that is still at least the target size.
+     * If that level is not built yet it is scheduled and the nearest finer level is returned,
+     * unless wait is set (exports), in which case it is built on the calling thread.
+     */
+    static BufferedImage level(BufferedImage src, double targetW, double targetH, boolean wait) {
+        int want = levelFor(src.getWidth(), src.getHeight(), targetW, targetH);
+        if (want == 0) return src;
+
+        Pyramid p;
+        synchronized (ImageMipCache.class) {
+            p = pyramids.computeIfAbsent(src, Pyramid::new);
+            BufferedImage[] lv = p.levels;
+            if (lv.length > want) return lv[want];
+            if (!wait) {
+                p.wanted = Math.max(p.wanted, want);
+                if (!p.building) {
+                    p.building = true;
+                    Pyramid job = p;
+                    BUILDER.execute(() -> build(src, job));
+                }
+                return lv[lv.length - 1];
+            }
+        }
+        synchronized (p) {
+            while (p.levels.length <= want) addLevel(src, p);
+        }
+        return p.levels[want];
+    }
+
+    static int levelFor(int srcW, int srcH, double targetW, double targetH) {
+        double r = Math.min(srcW / Math.max(1.0, targetW), srcH / Math.max(1.0, targetH));
+        if (r < 2) return 0;
+        int k = (int) Math.floor(Math.log(r) / Math.log(2));
+        // stop before levels get uselessly small
+        while (k > 0 && (srcW >> k) < MIN_LEVEL_PX && (srcH >> k) < MIN_LEVEL_PX) k--;
+        return k;
+    }
+
+    /** Drops the pyramid of an image that is no longer used. */
+    static synchronized void forget(BufferedImage src) {
+        Pyramid p = pyramids.remove(src);
+        if (p != null) usedBytes -= p.bytes;
+    }
+
+    private static void build(BufferedImage src, Pyramid p) {
+        while (true) {
+            synchronized (ImageMipCache.class) {
+                if (p.levels.length > p.wanted || pyramids.get(src) != p) { p.building = false; return; }
+            }
+            synchronized (p) {
+                if (p.levels.length <= p.wanted) addLevel(src, p);
+            }
+            List<Consumer<BufferedImage>> ls;
+            synchronized (ImageMipCache.class) {
+                ls = List.copyOf(listeners);
+            }
+            for (Consumer<BufferedImage> l : ls) l.accept(src);
+        }
+    }
+
+    // callers hold the pyramid's lock
+    private static void addLevel(BufferedImage src, Pyramid p) {
+        BufferedImage[] lv = p.levels;
+        BufferedImage next = halve(lv.length == 1 ? toPremultiplied(src) : lv[lv.length - 1]);
+        BufferedImage[] grown = Arrays.copyOf(lv, lv.length + 1);
+        grown[lv.length] = next;
+        long bytes = (long) next.getWidth() * next.getHeight() * 4;
+        synchronized (ImageMipCache.class) {
+            p.levels = grown;
+            p.bytes += bytes;
+            if (pyramids.get(src) == p) {
+                usedBytes += bytes;
+                evict(p);
+            }
+        }
+    }
+
+    private static void evict(Pyramid keep) {
+        Iterator<Map.Entry<BufferedImage, Pyramid>> it = pyramids.entrySet().iterator();
+        while (usedBytes > BUDGET_BYTES && it.hasNext()) {
+            Pyramid p = it.next().getValue();
+            if (p == keep) continue;
+            usedBytes -= p.bytes;
+            it.remove();
+        }
+    }
+
+    // always a fresh copy: halve() reads the int buffer directly and needs an unshared, unpadded raster
+    private static BufferedImage toPremultiplied(BufferedImage src) {
+        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = out.createGraphics();
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+        return out;
+    }
+
+    // 2x2 box filter; odd edges reuse the last row/column
+    static BufferedImage halve(BufferedImage src) {
+        int sw = src.getWidth(), sh = src.getHeight();
+        int w = Math.max(1, (sw + 1) / 2), h = Math.max(1, (sh + 1) / 2);
+        int[] in = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+        BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < h; y++) {
+            int r0 = Math.min(2 * y, sh - 1) * sw, r1 = Math.min(2 * y + 1, sh - 1) * sw;
+            for (int x = 0; x < w; x++) {
+                int c0 = Math.min(2 * x, sw - 1), c1 = Math.min(2 * x + 1, sw - 1);
+                int p0 = in[r0 + c0], p1 = in[r0 + c1], p2 = in[r1 + c0], p3 = in[r1 + c1];
+                int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+                int r = (((p0 >> 16) & 255) + ((p1 >> 16) & 255) + ((p2 >> 16) & 255) + ((p3 >> 16) & 255) + 2) >> 2;
+                int g = (((p0 >> 8) & 255) + ((p1 >> 8) & 255) + ((p2 >> 8) & 255) + ((p3 >> 8) & 255) + 2) >> 2;
+                int b = ((p0 & 255) + (p1 & 255) + (p2 & 255) + (p3 & 255) + 2) >> 2;
+                out[y * w + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return dst;
+    }
+}
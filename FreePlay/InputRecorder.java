@@ -0,0 +1,234 @@
+import java.awt.AWTEvent;
+import java.awt.Color;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * InputRecorder — writes the input events a CanvasView receives (mouse, motion, wheel, keys) with their
+ * timing to a compact file that InputReplay feeds back through the same handlers.
+ * Ctrl+Shift+R on the canvas starts / stops a recording (~/freeplay-input-<time>.fpr).
+ *
+ * File: magic + version, then records until EOF. A record is a kind byte; input records follow it with
+ * the µs since the previous input, the mouse position as zigzag delta to the previous one and the
+ * rest as varints (a pen drag sample is ~8 bytes). Whatever changed between two events without an
+ * event (toolbar tool/colour/size, window size, New/Load, drops) goes out as a STATE / DOC record
+ * before the next event, text pasted from the system clipboard as CLIP before the key that pasted it.
+ */
+public final class InputRecorder implements Closeable {
+
+    static final int MAGIC = 0x46504952; // "FPIR"
+    static final int VERSION = 2;   // 2: DOC records hold a .cvs v2 project (ProjectFormat)
+
+    // record kinds; input kinds are the AWT ids shifted into 1..11 (see kind/id)
+    static final int STATE = 20, DOC = 21, CLIP = 22;
+
+    static int kind(int id) {
+        return id >= MouseEvent.MOUSE_FIRST ? id - MouseEvent.MOUSE_FIRST + 1 : id - KeyEvent.KEY_FIRST + 9;
+    }
+
+    static int id(int kind) {
+        return kind <= 8 ? kind - 1 + MouseEvent.MOUSE_FIRST : kind - 9 + KeyEvent.KEY_FIRST;
+    }
+
+    /** Everything outside the document the handlers depend on. */
+    record State(int width, int height, double scale, double offX, double offY,
+                 canvasex.CanvasView.Mode mode, boolean editing, boolean typing, int penSize,
+                 int color, int textColor, String fontFamily, int fontSize, int fontStyle) {
+
+        static State of(canvasex.CanvasView cv) {
+            return new State(cv.getWidth(), cv.getHeight(), cv.scale, cv.offX, cv.offY,
+                    cv.mode, cv.editingEnabled, cv.typing, cv.penSize,
+                    cv.color.getRGB(), cv.textColor.getRGB(), cv.fontFamily, cv.fontSize, cv.fontStyle);
+        }
+
+        void apply(canvasex.CanvasView cv) {
+            if (cv.getWidth() != width || cv.getHeight() != height) cv.setSize(width, height);
+            cv.scale = scale; cv.offX = offX; cv.offY = offY;
+            cv.mode = mode;
+            cv.editingEnabled = editing;
+            cv.typing = typing;
+            cv.penSize = penSize;
+            cv.color = new Color(color, true);
+            cv.textColor = new Color(textColor, true);
+            cv.fontFamily = fontFamily; cv.fontSize = fontSize; cv.fontStyle = fontStyle;
+        }
+
+        void write(DataOutput out) throws IOException {
+            writeVarint(out, width); writeVarint(out, height);
+            out.writeDouble(scale); out.writeDouble(offX); out.writeDouble(offY);
+            out.writeByte(mode.ordinal());
+            out.writeBoolean(editing); out.writeBoolean(typing);
+            writeVarint(out, penSize);
+            out.writeInt(color); out.writeInt(textColor);
+            out.writeUTF(fontFamily); writeVarint(out, fontSize); writeVarint(out, fontStyle);
+        }
+
+        static State read(DataInput in) throws IOException {
+            return new State(readVarint(in), readVarint(in), in.readDouble(), in.readDouble(), in.readDouble(),
+                    canvasex.CanvasView.Mode.values()[in.readUnsignedByte()], in.readBoolean(), in.readBoolean(),
+                    readVarint(in), in.readInt(), in.readInt(), in.readUTF(), readVarint(in), readVarint(in));
+        }
+    }
+
+    private final canvasex.CanvasView cv;
+    private final File file;
+    private final DataOutputStream out;
+    // the current event is held back until the next one, so a CLIP written by its handler lands in front
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream(32);
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private long lastNanos = System.nanoTime();
+    private int lastX, lastY;
+    private State state;        // as the replay will have it after the last recorded event
+    private int docVersion;
+    private int events;
+
+    InputRecorder(canvasex.CanvasView cv, File file) throws IOException {
+        this.cv = cv;
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeDoc();
+        docVersion = cv.docVersion;
+        sync();
+    }
+
+    File file() { return file; }
+    int events() { return events; }
+
+    /** Before the handlers see e. */
+    void before(AWTEvent e) {
+        if (isToggle(e)) return;
+        try {
+            flushPending();
+            if (cv.docVersion != docVersion) {
+                writeDoc();
+                docVersion = cv.docVersion;
+            }
+            sync();
+            encode(e);
+            events++;
+        } catch (IOException ex) {
+            System.err.println("Error recording input: " + ex.getMessage());
+        }
+    }
+
+    /** After the handlers are done with the event: their effects are replayed, not recorded. */
+    void after() {
+        state = State.of(cv);
+        docVersion = cv.docVersion;
+    }
+
+    /** Text the current event's handler pasted from the system clipboard. */
+    void clipboard(String text) {
+        try {
+            out.writeByte(CLIP);
+            out.writeUTF(text);
+        } catch (IOException ex) {
+            System.err.println("Error recording input: " + ex.getMessage());
+        }
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            flushPending();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void sync() throws IOException {
+        State s = State.of(cv);
+        if (s.equals(state)) return;
+        out.writeByte(STATE);
+        s.write(out);
+        state = s;
+    }
+
+    private void writeDoc() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProjectFormat.write(bytes, new canvasex.ProjectData(cv.shapes, cv.scale, cv.offX, cv.offY,
+                cv.penSize, cv.color, cv.textColor, cv.fontSize, cv.fontFamily, cv.fontStyle));
+        out.writeByte(DOC);
+        writeVarint(out, bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private void flushPending() throws IOException {
+        if (pendingBytes.size() == 0) return;
+        pendingBytes.writeTo(out);
+        pendingBytes.reset();
+    }
+
+    private void encode(AWTEvent e) throws IOException {
+        long now = System.nanoTime();
+        long us = Math.max(0, (now - lastNanos) / 1000);
+        lastNanos += us * 1000;   // keep the remainder, no drift over long sessions
+        DataOutputStream d = pending;
+        d.writeByte(kind(e.getID()));
+        writeVarint(d, us);
+        if (e instanceof MouseEvent m) {
+            writeVarint(d, zigzag(m.getX() - lastX));
+            writeVarint(d, zigzag(m.getY() - lastY));
+            lastX = m.getX(); lastY = m.getY();
+            writeVarint(d, m.getModifiersEx());
+            d.writeByte(m.getButton());
+            writeVarint(d, m.getClickCount());
+            if (m instanceof MouseWheelEvent w) {
+                d.writeByte(w.getScrollType());
+                writeVarint(d, w.getScrollAmount());
+                writeVarint(d, zigzag(w.getWheelRotation()));
+                d.writeDouble(w.getPreciseWheelRotation());
+            }
+        } else if (e instanceof KeyEvent k) {
+            writeVarint(d, k.getModifiersEx());
+            writeVarint(d, k.getKeyCode());
+            writeVarint(d, k.getKeyChar());
+            d.writeByte(k.getKeyLocation());
+        }
+    }
+
+    // Ctrl+Shift+R itself stays out of the recording
+    private static boolean isToggle(AWTEvent e) {
+        if (!(e instanceof KeyEvent k)) return false;
+        int mask = InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK;
+        return (k.getModifiersEx() & mask) == mask && (k.getKeyCode() == KeyEvent.VK_R || k.getKeyChar() == '\u0012');
+    }
+
+    // ===== varints (LEB128), zigzag for signed deltas
+    static void writeVarint(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static int readVarint(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    static long zigzag(int v) { return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL; }
+
+    static int unzigzag(long v) { return (int) (v >>> 1) ^ -(int) (v & 1); }
+}
@@ -0,0 +1,303 @@
+import java.awt.AWTEvent;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * InputReplay — plays an InputRecorder file back through a headless CanvasView's input handlers and
+ * reports throughput, handler and frame times and a hash of the resulting document.
+ *
+ *   java -cp freeplay.jar:lib/* InputReplay session.fpr [--flat-out] [--repeat n]
+ *
+ * Real time keeps the recorded gaps and paints like the EDT: whenever a repaint is pending and the
+ * next event is not due yet. Flat-out sends the events back to back and paints after every event
+ * that asked for one (worst case). The document hash only depends on the recording.
+ */
+public final class InputReplay {
+
+    private InputReplay() {}
+
+    /** What the view gets from the window system during a replay (CanvasView.replay). */
+    static final class Session {
+        Rectangle dirty;         // repaints requested since the last frame
+        String clipboard = "";
+
+        void repaint(int x, int y, int w, int h) {
+            Rectangle r = new Rectangle(x, y, w, h);
+            if (dirty == null) dirty = r; else dirty.add(r);
+        }
+    }
+
+    private record Step(long atNanos, AWTEvent event, InputRecorder.State state, byte[] doc, String clip) {}
+
+    record Report(int events, int frames, long wallNanos, long[] handlerNanos, long[] frameNanos,
+                  int shapes, String hash) {
+
+        String format() {
+            double s = wallNanos / 1e9;
+            return String.format("events   %d in %.1f ms  (%.0f events/s)%n", events, wallNanos / 1e6, events / s)
+                    + "handler  " + percentiles(handlerNanos) + "\n"
+                    + String.format("frames   %d  ", frames) + percentiles(frameNanos) + "\n"
+                    + String.format("document %d shapes  sha256 %s%n", shapes, hash);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        File file = null;
+        boolean realTime = true;
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--flat-out" -> realTime = false;
+                case "--repeat" -> repeat = Integer.parseInt(args[++i]);
+                default -> file = new File(args[i]);
+            }
+        }
+        if (file == null) {
+            System.err.println("usage: InputReplay <recording.fpr> [--flat-out] [--repeat n]");
+            System.exit(2);
+        }
+        String first = null;
+        int status = 0;
+        for (int run = 1; run <= repeat; run++) {
+            Report r = replay(file, realTime);
+            System.out.printf("replay %s  (%s, run %d/%d)%n", file.getName(), realTime ? "real time" : "flat-out", run, repeat);
+            System.out.print(r.format());
+            if (first == null) first = r.hash;
+            else if (!first.equals(r.hash)) {
+                System.err.println("document hash differs from run 1");
+                status = 1;
+            }
+        }
+        System.exit(status);   // caret / HUD timers would keep the EDT alive
+    }
+
+    /** Replays on the EDT (where the handlers expect to run). */
+    static Report replay(File file, boolean realTime) throws Exception {
+        Report[] result = new Report[1];
+        Exception[] error = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result[0] = replayOnEdt(file, realTime);
+            } catch (Exception ex) {
+                error[0] = ex;
+            }
+        });
+        if (error[0] != null) throw error[0];
+        return result[0];
+    }
+
+    private static Report replayOnEdt(File file, boolean realTime) throws IOException {
+        canvasex.CanvasView cv = new canvasex.CanvasView();
+        Session session = new Session();
+        cv.replay = session;
+        cv.listenForImages(true);
+        List<Step> steps = read(file, cv);
+
+        long[] handler = new long[steps.size()];
+        List<Long> frames = new ArrayList<>();
+        BufferedImage[] frame = new BufferedImage[1];
+        int events = 0;
+        long start = System.nanoTime();
+        for (Step st : steps) {
+            if (st.doc != null) {
+                cv.setShapes(ProjectFormat.read(new ByteArrayInputStream(st.doc)).shapes);
+                cv.repaint();
+            } else if (st.state != null) {
+                st.state.apply(cv);
+                cv.repaint();
+            } else if (st.clip != null) {
+                session.clipboard = st.clip;
+            } else {
+                if (realTime) {
+                    long due = start + st.atNanos, now;
+                    while ((now = System.nanoTime()) < due) {
+                        if (session.dirty != null) paint(cv, session, frame, frames);
+                        else LockSupport.parkNanos(due - now);
+                    }
+                }
+                long t0 = System.nanoTime();
+                dispatch(cv, st.event);
+                handler[events++] = System.nanoTime() - t0;
+                if (!realTime && session.dirty != null) paint(cv, session, frame, frames);
+            }
+        }
+        if (session.dirty != null) paint(cv, session, frame, frames);
+        long wall = System.nanoTime() - start;
+        cv.replay = null;
+        cv.listenForImages(false);
+
+        long[] frameNanos = new long[frames.size()];
+        for (int i = 0; i < frameNanos.length; i++) frameNanos[i] = frames.get(i);
+        return new Report(events, frameNanos.length, wall, Arrays.copyOf(handler, events), frameNanos,
+                cv.shapes.size(), documentHash(cv.shapes));
+    }
+
+    private static void dispatch(canvasex.CanvasView cv, AWTEvent e) {
+        if (e instanceof MouseWheelEvent w) cv.processMouseWheelEvent(w);
+        else if (e instanceof MouseEvent m) {
+            if (m.getID() == MouseEvent.MOUSE_MOVED || m.getID() == MouseEvent.MOUSE_DRAGGED) cv.processMouseMotionEvent(m);
+            else cv.processMouseEvent(m);
+        } else cv.processKeyEvent((KeyEvent) e);
+    }
+
+    // one frame: repaint what the handlers asked for into an offscreen image of the view's size
+    private static void paint(canvasex.CanvasView cv, Session session, BufferedImage[] frame, List<Long> frames) {
+        Rectangle clip = session.dirty.intersection(new Rectangle(0, 0, cv.getWidth(), cv.getHeight()));
+        session.dirty = null;
+        if (clip.isEmpty()) return;
+        BufferedImage img = frame[0];
+        if (img == null || img.getWidth() != cv.getWidth() || img.getHeight() != cv.getHeight()) {
+            frame[0] = img = new BufferedImage(cv.getWidth(), cv.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = img.createGraphics();
+        g.setClip(clip);
+        long t0 = System.nanoTime();
+        cv.paintComponent(g);
+        frames.add(System.nanoTime() - t0);
+        g.dispose();
+    }
+
+    // whole file up front, so file reading stays out of the timings
+    private static List<Step> read(File file, canvasex.CanvasView cv) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != InputRecorder.MAGIC) throw new IOException("not an input recording: " + file);
+            int version = in.readUnsignedByte();
+            if (version != InputRecorder.VERSION) throw new IOException("unsupported recording version " + version);
+            long at = 0;
+            int x = 0, y = 0;
+            while (true) {
+                int kind;
+                try {
+                    kind = in.readUnsignedByte();
+                } catch (EOFException end) {
+                    break;
+                }
+                switch (kind) {
+                    case InputRecorder.STATE -> steps.add(new Step(at, null, InputRecorder.State.read(in), null, null));
+                    case InputRecorder.DOC -> {
+                        byte[] doc = new byte[InputRecorder.readVarint(in)];
+                        in.readFully(doc);
+                        steps.add(new Step(at, null, null, doc, null));
+                    }
+                    case InputRecorder.CLIP -> steps.add(new Step(at, null, null, null, in.readUTF()));
+                    default -> {
+                        if (kind < 1 || kind > 11) throw new IOException("bad record kind " + kind);
+                        int id = InputRecorder.id(kind);
+                        at += InputRecorder.readVarLong(in) * 1000;
+                        long when = at / 1_000_000;
+                        AWTEvent e;
+                        if (kind <= 8) {
+                            x += InputRecorder.unzigzag(InputRecorder.readVarLong(in));
+                            y += InputRecorder.unzigzag(InputRecorder.readVarLong(in));
+                            int mods = InputRecorder.readVarint(in);
+                            int button = in.readUnsignedByte();
+                            int clicks = InputRecorder.readVarint(in);
+                            if (id == MouseEvent.MOUSE_WHEEL) {
+                                int type = in.readUnsignedByte();
+                                int amount = InputRecorder.readVarint(in);
+                                int rotation = InputRecorder.unzigzag(InputRecorder.readVarLong(in));
+                                double precise = in.readDouble();
+                                e = new MouseWheelEvent(cv, id, when, mods, x, y, x, y, clicks, false,
+                                        type, amount, rotation, precise);
+                            } else {
+                                e = new MouseEvent(cv, id, when, mods, x, y, clicks, false, button);
+                            }
+                        } else {
+                            int mods = InputRecorder.readVarint(in);
+                            int code = InputRecorder.readVarint(in);
+                            char ch = (char) InputRecorder.readVarint(in);
+                            int location = in.readUnsignedByte();
+                            e = new KeyEvent(cv, id, when, mods, code, ch, location);
+                        }
+                        steps.add(new Step(at, e, null, null, null));
+                    }
+                }
+            }
+        }
+        return steps;
+    }
+
+    /** SHA-256 over every shape's geometry and resolved style, in paint order (style ids are per process). */
+    static String documentHash(List<canvasex.DrawingShape> shapes) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (DataOutputStream d = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md))) {
+            for (canvasex.DrawingShape s : shapes) {
+                d.writeUTF(s.getClass().getSimpleName());
+                if (s instanceof canvasex.LineShape l) {
+                    points(d, l.a.x, l.a.y, l.b.x, l.b.y);
+                } else if (s instanceof canvasex.RectShape r) {
+                    points(d, r.a.x, r.a.y, r.b.x, r.b.y);
+                } else if (s instanceof canvasex.OvalShape o) {
+                    points(d, o.a.x, o.a.y, o.b.x, o.b.y);
+                } else if (s instanceof canvasex.StrokeShape st) {
+                    d.writeInt(st.n);
+                    for (int i = 0; i < 2 * st.n; i++) d.writeInt(st.xy[i]);
+                } else if (s instanceof canvasex.TextShape t) {
+                    d.writeUTF(t.text);
+                    points(d, t.pos.x, t.pos.y);
+                } else if (s instanceof canvasex.CanvasView.ImageShape im) {
+                    points(d, im.x, im.y, im.width, im.height);
+                    byte[] b = im.imgBytes;
+                    d.writeInt(b == null ? -1 : b.length);
+                    if (b != null) d.write(b);
+                }
+                if (s.styleId() >= 0) {
+                    StyleTable.Style st = StyleTable.get(s.styleId());
+                    d.writeInt(st.argb); d.writeInt(st.size); d.writeBoolean(st.round);
+                    d.writeUTF(st.fontFamily == null ? "" : st.fontFamily);
+                    d.writeInt(st.fontStyle); d.writeInt(st.fontSize);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);   // null stream, cannot happen
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static void points(DataOutputStream d, int... v) throws IOException {
+        for (int i : v) d.writeInt(i);
+    }
+
+    // "p50 0.02  p95 0.31  p99 1.20  max 4.10 ms"
+    static String percentiles(long[] nanos) {
+        if (nanos.length == 0) return "-";
+        long[] s = nanos.clone();
+        Arrays.sort(s);
+        return String.format("p50 %.3f  p95 %.3f  p99 %.3f  max %.3f ms",
+                pct(s, 50) / 1e6, pct(s, 95) / 1e6, pct(s, 99) / 1e6, s[s.length - 1] / 1e6);
+    }
+
+    private static long pct(long[] sorted, int p) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * p / 100))];
+    }
+}
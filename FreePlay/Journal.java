@@ -0,0 +1,458 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import javax.swing.Timer;
+
+/**
+ * Journal — append-only log of document edits beside the autosave, so that the work since the
+ * last full save survives a crash.
+ *
+ * CanvasView reports every edit (added / removed / moved / cleared). Every COMMIT_MS the EDT
+ * encodes what happened since the last commit (and the view, if it changed) as one frame; the
+ * "journal" thread appends it and forces it to disk (group commit: one fsync per frame, not per
+ * edit). A checkpoint is a full autosave: Autosave.snapshot rotates to a new journal file and the
+ * project file records that generation (ProjectFormat META); once it is on disk the older
+ * journals are deleted. On startup recover() replays the journals from the checkpoint's
+ * generation on.
+ *
+ * File <autosave>.journal-<gen>: MAGIC, version, gen, then frames [int length][int crc32][ops].
+ * A frame is applied whole or not at all; a torn tail (crash while appending) ends the journal.
+ * Shapes are ProjectFormat records (coordinates restart per frame, styles and image bytes are
+ * defined once per file). Moves are coalesced per frame: the shape's final state, at its index.
+ */
+public final class Journal {
+
+    static final int MAGIC = 0x46504A4C;   // "FPJL"
+    static final int VERSION = 1;
+    static final int COMMIT_MS = 250;
+    // checkpoint once the journal is this big, or when it has entries and the last one is this old
+    static final long CHECKPOINT_BYTES = 8L << 20;
+    static final long CHECKPOINT_NS = TimeUnit.MINUTES.toNanos(5);
+
+    // ops
+    static final int STYLES = 1, BLOB = 2, ADD = 3, REMOVE = 4, MOVE = 5, CLEAR = 6, VIEW = 7;
+
+    private static final int HEADER = 4 + 1 + 8;
+    private static final int MAX_FRAME = 1 << 30;
+
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record Op(int kind, canvasex.DrawingShape shape, int index) {}
+
+    private record Blob(int id, canvasex.CanvasView.ImageShape image) {}
+
+    /** Startup result: the checkpoint with the journals applied (null = nothing to restore). */
+    record Recovery(canvasex.ProjectData doc, long nextGen, int ops) {}
+
+    private final File base;
+    private final canvasex.CanvasView cv;
+    private final Timer timer = new Timer(COMMIT_MS, e -> commit());
+
+    // EDT
+    private long gen;
+    private ProjectFormat.Encoder enc = new ProjectFormat.Encoder(4096);
+    private final Map<canvasex.CanvasView.ImageShape, Integer> blobIds = new IdentityHashMap<>();
+    private final List<Op> pending = new ArrayList<>();
+    private final Set<canvasex.DrawingShape> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+    private byte[] lastView;
+    private boolean suspended;
+    private long checkpointAt = System.nanoTime();
+
+    // journal thread
+    private FileChannel ch;
+    private final CRC32 crc = new CRC32();
+    private volatile long size;          // bytes in the current file
+    private volatile boolean failed;     // an append failed: only a checkpoint saves the edits now
+
+    /** Starts journal gen for cv's current document (which the caller makes durable by a checkpoint). */
+    Journal(File base, canvasex.CanvasView cv, long gen) {
+        this.base = base;
+        this.cv = cv;
+        this.gen = gen;
+        lastView = viewBytes();
+        long g = gen;
+        IO.execute(() -> open(g));
+        timer.start();
+    }
+
+    // ===== edits (EDT)
+
+    void added(canvasex.DrawingShape s) {
+        if (!suspended) pending.add(new Op(ADD, s, 0));
+    }
+
+    void removed(int index) {
+        if (!suspended) pending.add(new Op(REMOVE, null, index));
+    }
+
+    void moved(canvasex.DrawingShape s) {
+        if (!suspended) moved.add(s);
+    }
+
+    void cleared() {
+        if (suspended) return;
+        pending.clear();
+        moved.clear();
+        pending.add(new Op(CLEAR, null, 0));
+    }
+
+    /** The whole document is replaced (load): stop logging until the next checkpoint (rotate) covers it. */
+    void suspend() {
+        suspended = true;
+        pending.clear();
+        moved.clear();
+    }
+
+    /** Appends the edits since the last commit as one frame (timer; also before rotating). */
+    void commit() {
+        if (suspended) return;
+        byte[] view = viewBytes();
+        boolean viewChanged = !Arrays.equals(view, lastView);
+        if (pending.isEmpty() && moved.isEmpty() && !viewChanged) return;
+
+        ProjectFormat.Bytes r = enc.records;
+        r.reset();
+        enc.resetCursor();
+        List<Blob> images = new ArrayList<>();
+        for (Op op : pending) {
+            switch (op.kind) {
+                case ADD -> shape(ADD, -1, op.shape, images);
+                case REMOVE -> { r.writeByte(REMOVE); r.varint(op.index); }
+                default -> r.writeByte(CLEAR);
+            }
+        }
+        // indices of the document as it is now, i.e. after all ops above
+        for (canvasex.DrawingShape s : moved) {
+            int i = cv.shapes.lastIndexOf(s);
+            if (i >= 0) shape(MOVE, cv.documentIndex(i), s, images);
+        }
+        if (viewChanged) {
+            r.writeByte(VIEW);
+            r.varint(view.length);
+            r.write(view, 0, view.length);
+            lastView = view;
+        }
+        pending.clear();
+        moved.clear();
+
+        ProjectFormat.Bytes ops = new ProjectFormat.Bytes(r.size() + enc.styles.size() + 16);
+        if (enc.newStyles > 0) {
+            ops.writeByte(STYLES);
+            enc.takeStyles(ops);
+        }
+        ops.write(r.buf, 0, r.size());
+        IO.execute(() -> append(images, ops));
+    }
+
+    /**
+     * Starts the next journal file; the caller snapshots the document right after, on the EDT,
+     * and writes the returned generation into that checkpoint.
+     */
+    long rotate() {
+        commit();
+        suspended = false;
+        long g = ++gen;
+        enc = new ProjectFormat.Encoder(4096);
+        blobIds.clear();
+        lastView = viewBytes();
+        checkpointAt = System.nanoTime();
+        IO.execute(() -> open(g));
+        return g;
+    }
+
+    /** The checkpoint of gen is on disk: the journals before it are not needed anymore (any thread). */
+    void checkpointed(long gen) {
+        IO.execute(() -> {
+            for (Map.Entry<Long, File> e : files(base).entrySet()) {
+                if (e.getKey() < gen && !e.getValue().delete()) {
+                    System.err.println("Could not delete journal " + e.getValue().getAbsolutePath());
+                }
+            }
+        });
+    }
+
+    /** True when a checkpoint would keep the journal short (EDT). */
+    boolean checkpointDue() {
+        if (suspended || failed || size >= CHECKPOINT_BYTES) return true;
+        return size > HEADER && System.nanoTime() - checkpointAt >= CHECKPOINT_NS;
+    }
+
+    /** Last commit, then waits (briefly) until it is on disk (exit). */
+    void close() {
+        timer.stop();
+        commit();
+        Future<?> f = IO.submit(this::closeFile);
+        try {
+            f.get(2, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            System.err.println("Error closing journal: " + ex);
+        }
+    }
+
+    // op + shape record; image bytes are written by the journal thread (they may still be encoding)
+    private void shape(int kind, int index, canvasex.DrawingShape s, List<Blob> images) {
+        ProjectFormat.Bytes r = enc.records;
+        r.writeByte(kind);
+        if (index >= 0) r.varint(index);
+        int blob = 0;
+        if (s instanceof canvasex.CanvasView.ImageShape im) {
+            Integer id = blobIds.get(im);
+            if (id != null) {
+                blob = id;
+            } else if (kind == ADD) {
+                blob = blobIds.size() + 1;
+                blobIds.put(im, blob);
+                images.add(new Blob(blob, im));
+            }   // moved image from before this file: 0 = keeps its bytes
+        }
+        if (!enc.shape(s, blob)) r.writeByte(0);   // not a shape the format knows: replay skips it
+    }
+
+    private byte[] viewBytes() {
+        ProjectFormat.Bytes b = new ProjectFormat.Bytes(64);
+        ProjectFormat.encodeView(b, cv.scale, cv.offX, cv.offY, cv.penSize, cv.color, cv.textColor,
+                cv.fontSize, cv.fontFamily, cv.fontStyle);
+        return Arrays.copyOf(b.buf, b.size());
+    }
+
+    // ===== file (journal thread)
+
+    private void open(long g) {
+        closeFile();
+        File f = file(base, g);
+        try {
+            ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer head = ByteBuffer.allocate(HEADER);
+            head.putInt(MAGIC).put((byte) VERSION).putLong(g).flip();
+            while (head.hasRemaining()) ch.write(head);
+            ch.force(true);
+            size = HEADER;
+            failed = false;
+        } catch (IOException ex) {
+            System.err.println("Error creating journal " + f.getAbsolutePath() + ": " + ex.getMessage());
+            closeFile();
+            failed = true;
+        }
+    }
+
+    private void append(List<Blob> images, ProjectFormat.Bytes ops) {
+        if (ch == null) return;
+        ProjectFormat.Bytes payload = ops;
+        if (!images.isEmpty()) {
+            payload = new ProjectFormat.Bytes(ops.size() + 4096);
+            for (Blob b : images) {
+                byte[] bytes = b.image.bytes();
+                if (bytes == null) continue;
+                payload.writeByte(BLOB);
+                payload.varint(b.id);
+                payload.varint(bytes.length);
+                payload.write(bytes, 0, bytes.length);
+            }
+            payload.write(ops.buf, 0, ops.size());
+        }
+        crc.reset();
+        crc.update(payload.buf, 0, payload.size());
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.size());
+        frame.putInt(payload.size()).putInt((int) crc.getValue()).put(payload.buf, 0, payload.size()).flip();
+        try {
+            while (frame.hasRemaining()) ch.write(frame);
+            ch.force(false);
+            size += frame.limit();
+        } catch (IOException ex) {
+            System.err.println("Error writing journal: " + ex.getMessage());
+            closeFile();
+            failed = true;
+        }
+    }
+
+    private void closeFile() {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ignored) {}
+        ch = null;
+    }
+
+    // ===== recovery
+
+    static File file(File base, long gen) {
+        return new File(base.getAbsoluteFile().getParentFile(), base.getName() + ".journal-" + gen);
+    }
+
+    /** Journal files beside base by generation. */
+    static TreeMap<Long, File> files(File base) {
+        TreeMap<Long, File> out = new TreeMap<>();
+        String prefix = base.getName() + ".journal-";
+        File[] list = base.getAbsoluteFile().getParentFile().listFiles((d, n) -> n.startsWith(prefix));
+        if (list == null) return out;
+        for (File f : list) {
+            try {
+                out.put(Long.parseLong(f.getName().substring(prefix.length())), f);
+            } catch (NumberFormatException ignored) {}
+        }
+        return out;
+    }
+
+    /** A generation after every journal on disk (for when the checkpoint could not be read). */
+    static long nextGen(File base) {
+        TreeMap<Long, File> files = files(base);
+        return files.isEmpty() ? 1 : files.lastKey() + 1;
+    }
+
+    /**
+     * Applies the journals after checkpoint (null = no autosave) in generation order, up to the
+     * first missing one or a damaged frame. Also picks the generation the new session logs to.
+     */
+    static Recovery recover(File base, canvasex.ProjectData checkpoint) {
+        TreeMap<Long, File> files = files(base);
+        long last = files.isEmpty() ? 0 : files.lastKey();
+        canvasex.ProjectData pd = checkpoint;
+        long from;
+        if (pd != null) {
+            from = pd.journalGen;   // 0: not written with a journal, nothing to apply
+        } else {
+            // no autosave yet: only the first session's journal starts from an empty document
+            from = files.containsKey(1L) ? 1 : 0;
+            if (from > 0) pd = new canvasex.ProjectData(List.of(), 1.0, 0, 0, 4, Color.BLACK, Color.BLACK,
+                    24, "Arial", Font.PLAIN);
+        }
+        long next = Math.max(from - 1, last) + 1;
+        int[] ops = {0};
+        if (from > 0) {
+            for (long g = from; files.containsKey(g); g++) {
+                try {
+                    replay(files.get(g), g, pd, ops);
+                } catch (IOException ex) {
+                    System.err.println("Journal " + files.get(g).getAbsolutePath() + " is damaged: " + ex.getMessage());
+                    break;
+                }
+            }
+        }
+        if (checkpoint == null && ops[0] == 0) pd = null;
+        return new Recovery(pd, next, ops[0]);
+    }
+
+    // applies every complete frame of file to pd, counting the ops in ops[0]
+    private static void replay(File file, long gen, canvasex.ProjectData pd, int[] ops) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (in.remaining() < HEADER || in.getInt() != MAGIC) throw new IOException("not a journal");
+        int version = in.get();
+        if (version > VERSION) throw new IOException("written by a newer version (journal " + version + ")");
+        if (in.getLong() != gen) throw new IOException("generation does not match its name");
+        ProjectFormat.Decoder dec = new ProjectFormat.Decoder();
+        CRC32 crc = new CRC32();
+        List<canvasex.DrawingShape> shapes = pd.shapes;
+        while (in.remaining() >= 8) {
+            int len = in.getInt(), sum = in.getInt();
+            if (len < 0 || len > MAX_FRAME || len > in.remaining()) break;        // torn tail
+            byte[] frame = new byte[len];
+            in.get(frame);
+            crc.reset();
+            crc.update(frame);
+            if ((int) crc.getValue() != sum) break;
+            // decode the whole frame and check its indices (against the size the ops leave) before
+            // applying any of it
+            List<Op> decoded = new ArrayList<>();
+            int size = shapes.size();
+            canvasex.ProjectData view = null;
+            dec.reset(frame);
+            while (dec.pos < len) {
+                int op = dec.buf[dec.pos++];
+                switch (op) {
+                    case STYLES -> dec.styles();
+                    case BLOB -> {
+                        int id = dec.varint(), n = dec.varint();
+                        dec.blob(id, Arrays.copyOfRange(frame, dec.pos, dec.pos + n));
+                        dec.pos += n;
+                    }
+                    case ADD -> {
+                        canvasex.DrawingShape s = record(dec);
+                        if (s != null) size++;
+                        decoded.add(new Op(ADD, s, 0));
+                    }
+                    case REMOVE -> {
+                        decoded.add(new Op(REMOVE, null, index(dec.varint(), size)));
+                        size--;
+                    }
+                    case MOVE -> {
+                        int i = index(dec.varint(), size);
+                        decoded.add(new Op(MOVE, record(dec), i));
+                    }
+                    case CLEAR -> {
+                        decoded.add(new Op(CLEAR, null, 0));
+                        size = 0;
+                    }
+                    case VIEW -> {
+                        int n = dec.varint();
+                        view = ProjectFormat.decodeView(Arrays.copyOfRange(frame, dec.pos, dec.pos + n));
+                        dec.pos += n;
+                    }
+                    default -> throw new IOException("unknown op " + op);
+                }
+            }
+            for (Op op : decoded) {
+                ops[0]++;
+                switch (op.kind) {
+                    case ADD -> { if (op.shape != null) shapes.add(op.shape); }
+                    case REMOVE -> shapes.remove(op.index);
+                    case MOVE -> {
+                        canvasex.DrawingShape old = shapes.get(op.index);
+                        canvasex.DrawingShape s = op.shape;
+                        if (s instanceof canvasex.CanvasView.ImageShape im && im.imgBytes == null
+                                && old instanceof canvasex.CanvasView.ImageShape o) im.imgBytes = o.bytes();
+                        if (s != null) shapes.set(op.index, s);
+                    }
+                    default -> shapes.clear();
+                }
+            }
+            if (view != null) {
+                pd.scale = view.scale; pd.offX = view.offX; pd.offY = view.offY;
+                pd.penSize = view.penSize;
+                pd.drawColor = view.drawColor; pd.textColor = view.textColor;
+                pd.fontSize = view.fontSize; pd.fontFamily = view.fontFamily; pd.fontStyle = view.fontStyle;
+                ops[0]++;
+            }
+        }
+    }
+
+    // shape record, or null for one the writer could not encode (tag 0)
+    private static canvasex.DrawingShape record(ProjectFormat.Decoder dec) throws IOException {
+        if (dec.buf[dec.pos] == 0) {
+            dec.pos++;
+            return null;
+        }
+        return dec.shape();
+    }
+
+    private static int index(int i, int size) throws IOException {
+        if (i < 0 || i >= size) throw new IOException("op on shape " + i + " of " + size);
+        return i;
+    }
+}
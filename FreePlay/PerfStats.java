@@ -0,0 +1,287 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PerfStats — frame-time instrumentation of the canvas.
+ * Per painted frame: paint time, shapes considered (document size) vs. drawn, images decoded,
+ * bytes allocated on the EDT and the latency from the first input event that asked for a repaint
+ * to the end of the paint. Kept as rolling histograms (last HISTORY frames) for the HUD and as a
+ * raw frame log (last LOG_FRAMES) that can be dumped to CSV.
+ * Off unless enabled (F9 / -Dfreeplay.perf=true); disabled, every hook is one boolean check.
+ * Frame and input hooks are EDT only; decode/draw counters may be hit from any thread.
+ */
+public final class PerfStats {
+
+    private PerfStats() {}
+
+    static final int HISTORY = 600;
+    static final int LOG_FRAMES = 10_000;
+    private static final long HUD_REFRESH_NS = 250_000_000L;
+
+    static volatile boolean enabled = Boolean.getBoolean("freeplay.perf");
+
+    /** Last HISTORY samples; percentiles over a sorted copy (only when the HUD text is refreshed). */
+    static final class Rolling {
+        private final long[] v = new long[HISTORY];
+        private int n, pos;
+
+        void add(long x) {
+            v[pos] = x;
+            pos = (pos + 1) % v.length;
+            if (n < v.length) n++;
+        }
+
+        int count() { return n; }
+
+        long percentile(double p) {
+            if (n == 0) return 0;
+            long[] s = Arrays.copyOf(v, n);
+            Arrays.sort(s);
+            int i = (int) Math.ceil(p / 100.0 * n) - 1;
+            return s[Math.max(0, Math.min(n - 1, i))];
+        }
+
+        long max() {
+            long m = 0;
+            for (int i = 0; i < n; i++) m = Math.max(m, v[i]);
+            return m;
+        }
+
+        void clear() { n = pos = 0; }
+    }
+
+    static final Rolling frameNs = new Rolling();
+    static final Rolling latencyNs = new Rolling();
+    static final Rolling inputNs = new Rolling();
+    static final Rolling drawn = new Rolling();
+    static final Rolling paintAlloc = new Rolling();
+    static final Rolling decodeNs = new Rolling();
+
+    private static final AtomicLong drawnCounter = new AtomicLong();
+    private static final AtomicInteger decodedCounter = new AtomicInteger();
+    private static final AtomicInteger decodedTotal = new AtomicInteger();
+
+    // input: start of the oldest input that requested a repaint and is not painted yet (0 = none)
+    private static long pendingInput;
+    private static boolean repaintRequested;
+
+    // raw frame log (ring): LOG_COLS longs per frame, columns as in CSV_HEADER
+    private static final String CSV_HEADER = "t_ms,frame_us,considered,drawn,decoded,paint_alloc_bytes,edt_alloc_bytes,latency_us";
+    private static final int LOG_COLS = 8;
+    private static long[] log;
+    private static int logN, logPos;
+    private static final long T0 = System.nanoTime();
+
+    private static long lastEdtAlloc = -1;
+    private static long lastFrameEnd;
+    private static double edtAllocRate;   // bytes/s, smoothed
+    private static int lastConsidered;
+
+    private static String[] hudLines = new String[0];
+    private static long hudAt;
+    private static String lastDump;
+    private static volatile Autosave.Result lastSave;
+
+    // ThreadMXBean only loaded once the stats are on (keeps it out of startup)
+    private static final class Alloc {
+        static final java.lang.management.ThreadMXBean MX = ManagementFactory.getThreadMXBean();
+        static final boolean OK = MX instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported()
+                && t.isThreadAllocatedMemoryEnabled();
+
+        static long current() {
+            return OK ? ((com.sun.management.ThreadMXBean) MX).getCurrentThreadAllocatedBytes() : -1;
+        }
+    }
+
+    static void setEnabled(boolean on) {
+        boolean was = enabled;
+        enabled = on;
+        if (!on || was) return;
+        frameNs.clear(); latencyNs.clear(); inputNs.clear(); drawn.clear(); paintAlloc.clear(); decodeNs.clear();
+        pendingInput = 0;
+        lastEdtAlloc = -1;
+        hudAt = 0;
+    }
+
+    // ===== hooks =====
+
+    static long inputStart() {
+        if (!enabled) return 0;
+        repaintRequested = false;
+        return System.nanoTime();
+    }
+
+    static void inputEnd(long t0) {
+        if (!enabled || t0 == 0) return;
+        inputNs.add(System.nanoTime() - t0);
+        if (repaintRequested && pendingInput == 0) pendingInput = t0;
+    }
+
+    /** The canvas asked for a repaint (any thread; only counts inside an input handler). */
+    static void repaintRequested() {
+        if (enabled) repaintRequested = true;
+    }
+
+    static long frameStart() {
+        if (!enabled) return 0;
+        return System.nanoTime();
+    }
+
+    static long allocStart() {
+        return enabled ? Alloc.current() : -1;
+    }
+
+    static void shapesDrawn(int n) {
+        if (enabled) drawnCounter.addAndGet(n);
+    }
+
+    static void imageDecoded(long ns) {
+        if (!enabled) return;
+        decodedCounter.incrementAndGet();
+        decodedTotal.incrementAndGet();
+        synchronized (decodeNs) { decodeNs.add(ns); }
+    }
+
+    /** A background autosave finished (always kept for the HUD; logged to stderr while enabled). */
+    static void autosaved(Autosave.Result r) {
+        lastSave = r;
+        if (enabled) System.err.println("autosave: " + r);
+    }
+
+    /** End of a painted frame; t0 / alloc0 from frameStart / allocStart. */
+    static void frameEnd(long t0, long alloc0, int considered) {
+        if (!enabled || t0 == 0) return;
+        long now = System.nanoTime();
+        long ft = now - t0;
+        long alloc = Alloc.current();
+        long pa = (alloc >= 0 && alloc0 >= 0) ? alloc - alloc0 : -1;
+        long ea = (alloc >= 0 && lastEdtAlloc >= 0) ? alloc - lastEdtAlloc : -1;
+        if (ea >= 0 && lastFrameEnd != 0) {
+            double rate = ea / Math.max(1e-3, (now - lastFrameEnd) / 1e9);
+            edtAllocRate = edtAllocRate == 0 ? rate : edtAllocRate * 0.9 + rate * 0.1;
+        }
+        lastEdtAlloc = alloc;
+        lastFrameEnd = now;
+        long lat = pendingInput != 0 ? now - pendingInput : -1;
+        pendingInput = 0;
+        int d = (int) drawnCounter.getAndSet(0);
+        int dec = decodedCounter.getAndSet(0);
+
+        frameNs.add(ft);
+        drawn.add(d);
+        if (pa >= 0) paintAlloc.add(pa);
+        if (lat >= 0) latencyNs.add(lat);
+
+        if (log == null) log = new long[LOG_FRAMES * LOG_COLS];
+        int o = logPos * LOG_COLS;
+        log[o] = (now - T0) / 1_000_000;
+        log[o + 1] = ft / 1000;
+        log[o + 2] = considered;
+        log[o + 3] = d;
+        log[o + 4] = dec;
+        log[o + 5] = pa;
+        log[o + 6] = ea;
+        log[o + 7] = lat >= 0 ? lat / 1000 : -1;
+        logPos = (logPos + 1) % LOG_FRAMES;
+        if (logN < LOG_FRAMES) logN++;
+        lastConsidered = considered;
+    }
+
+    // ===== HUD =====
+
+    static final Color HUD_BG = new Color(20, 20, 24, 200);
+    static final Color HUD_FG = new Color(230, 230, 230);
+    static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+    private static final int HUD_PAD = 6;
+
+    /** Paints the HUD at the bottom left of a w x h component; returns the area it covers. */
+    static Rectangle paintHud(Graphics2D g, int w, int h) {
+        long now = System.nanoTime();
+        if (now - hudAt > HUD_REFRESH_NS) {
+            hudLines = hudText();
+            hudAt = now;
+        }
+        g.setFont(HUD_FONT);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        FontMetrics fm = g.getFontMetrics();
+        int tw = 0;
+        for (String s : hudLines) tw = Math.max(tw, fm.stringWidth(s));
+        int bw = tw + 2 * HUD_PAD, bh = hudLines.length * fm.getHeight() + 2 * HUD_PAD;
+        Rectangle r = new Rectangle(8, h - bh - 8, bw, bh);
+        g.setColor(HUD_BG);
+        g.fillRoundRect(r.x, r.y, r.width, r.height, 8, 8);
+        g.setColor(HUD_FG);
+        int y = r.y + HUD_PAD + fm.getAscent();
+        for (String s : hudLines) {
+            g.drawString(s, r.x + HUD_PAD, y);
+            y += fm.getHeight();
+        }
+        return r;
+    }
+
+    private static String[] hudText() {
+        long decodes;
+        String decodePct;
+        synchronized (decodeNs) {
+            decodes = decodeNs.count();
+            decodePct = decodes == 0 ? "-" : ms(decodeNs.percentile(50)) + " / " + ms(decodeNs.percentile(95));
+        }
+        return new String[] {
+            String.format("frame     p50 %s  p95 %s  p99 %s  max %s ms  (%d)", ms(frameNs.percentile(50)),
+                    ms(frameNs.percentile(95)), ms(frameNs.percentile(99)), ms(frameNs.max()), frameNs.count()),
+            String.format("input>px  p50 %s  p95 %s  p99 %s ms  (%d)", ms(latencyNs.percentile(50)),
+                    ms(latencyNs.percentile(95)), ms(latencyNs.percentile(99)), latencyNs.count()),
+            String.format("handler   p50 %s  p95 %s  p99 %s ms", ms(inputNs.percentile(50)),
+                    ms(inputNs.percentile(95)), ms(inputNs.percentile(99))),
+            String.format("shapes    drawn p50 %d  p95 %d  of %d", drawn.percentile(50), drawn.percentile(95), lastConsidered),
+            String.format("images    decoded %d  p50/p95 %s ms", decodedTotal.get(), decodePct),
+            Alloc.OK ? String.format("alloc     paint p50 %s  p95 %s  EDT %.1f MB/s", kb(paintAlloc.percentile(50)),
+                    kb(paintAlloc.percentile(95)), edtAllocRate / (1 << 20)) : "alloc     n/a",
+            lastSave != null ? "autosave  " + lastSave : "autosave  -",
+            lastDump != null ? "csv       " + lastDump : "F9 hide  Shift+F9 dump CSV",
+        };
+    }
+
+    private static String ms(long ns) { return String.format("%.2f", ns / 1e6); }
+
+    private static String kb(long bytes) { return bytes < 1024 ? bytes + " B" : (bytes >> 10) + " KB"; }
+
+    // ===== CSV =====
+
+    /** Writes the frame log (oldest first) to dir/freeplay-perf-<time>.csv. */
+    static File dumpCsv(File dir) throws IOException {
+        File f = new File(dir, "freeplay-perf-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        try (BufferedWriter w = Files.newBufferedWriter(f.toPath())) {
+            w.write(CSV_HEADER);
+            w.newLine();
+            int start = logN < LOG_FRAMES ? 0 : logPos;
+            for (int i = 0; i < logN; i++) {
+                int o = ((start + i) % LOG_FRAMES) * LOG_COLS;
+                StringBuilder sb = new StringBuilder();
+                for (int c = 0; c < LOG_COLS; c++) {
+                    if (c > 0) sb.append(',');
+                    sb.append(log[o + c]);
+                }
+                w.write(sb.toString());
+                w.newLine();
+            }
+        }
+        lastDump = f.getAbsolutePath();
+        hudAt = 0;
+        return f;
+    }
+}
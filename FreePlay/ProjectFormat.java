@@ -0,0 +1,612 @@
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ProjectFormat — the .cvs v2 project file: a header, then length-prefixed sections until END.
+ *
+ *   VIEW    view + pen/text settings
+ *   STYLES  styles in order of first use (file style ids are dense; written just before the
+ *           SHAPES section that first needs them)
+ *   SHAPES  record count + type-tagged shape records; coordinates are zigzag varints relative to the
+ *           previous point (reset per section, so every section decodes on its own)
+ *   BLOB    id + image file bytes (written before the shapes using them, shared bytes once)
+ *   META    journal generation the file is a checkpoint of (Journal; absent = 0)
+ *   TOC     offset + length of every section, and the record count + bounding box of each
+ *           SHAPES section; its own offset is in a trailer after END (ProjectMap opens the file
+ *           through it, loading only the sections in view)
+ *
+ * Shape sections are cut at SECTION_BYTES and also where the drawing leaves a SECTION_EXTENT
+ * square, so that their boxes stay small. Readers skip sections they don't know. Files from before v2 are Java-serialized ProjectData
+ * (see canvasex.readProject, which imports them). Encoder / Decoder hold the shape records and
+ * their style table; the edit journal frames the same records differently.
+ */
+public final class ProjectFormat {
+
+    private ProjectFormat() {}
+
+    static final int MAGIC = 0x46504356;   // "FPCV"
+    static final int VERSION = 2;
+
+    // sections
+    static final int END = 0, VIEW = 1, STYLES = 2, SHAPES = 3, BLOB = 4, META = 5, TOC = 6;
+    // shape records
+    static final int LINE = 1, STROKE = 2, RECT = 3, OVAL = 4, TEXT = 5, IMAGE = 6;
+
+    // shape sections are cut at about this size (bounded buffers on both sides)
+    private static final int SECTION_BYTES = 64 << 10;
+    // ... or once they have this many shapes and the next one is outside a square this big
+    private static final int SECTION_MIN_SHAPES = 64;
+    private static final int SECTION_EXTENT = 4096;
+
+    // after END: long TOC payload offset, int TOC payload length, TOC_MAGIC
+    static final int TOC_MAGIC = 0x46505443;   // "FPTC"
+    static final int TRAILER = 16;
+
+    /** True if in starts with a v2 header (in must support mark/reset; nothing is consumed). */
+    static boolean isV2(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            return new DataInputStream(in).readInt() == MAGIC;
+        } catch (EOFException ex) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    static void write(OutputStream out, canvasex.ProjectData pd) throws IOException {
+        try (Writer w = new Writer(out)) {
+            w.view(pd);
+            for (canvasex.DrawingShape s : pd.shapes) w.shape(s);
+        }
+    }
+
+    static canvasex.ProjectData read(InputStream in) throws IOException {
+        Reader r = new Reader(in);
+        canvasex.ProjectData pd = r.view();
+        for (canvasex.DrawingShape s; (s = r.next()) != null; ) pd.shapes.add(s);
+        pd.journalGen = r.generation();
+        return pd;
+    }
+
+    // ===== Writer
+
+    /** Streaming writer: view(...) once, then shape(...) in paint order; close() ends the file. */
+    static final class Writer implements Closeable {
+        private final Counting counted;
+        private final DataOutputStream out;
+        private final Encoder enc = new Encoder(SECTION_BYTES + 1024);
+        private int shapeCount;
+        private Rectangle box;                     // bounds of the current shapes section
+        private final Map<byte[], Integer> blobs = new IdentityHashMap<>();
+        private final Bytes toc = new Bytes(1024);
+        private int tocEntries;
+        private long tocAt;                        // offset of the previous entry (delta coded)
+
+        Writer(OutputStream os) throws IOException {
+            counted = new Counting(new BufferedOutputStream(os, 1 << 16));
+            out = new DataOutputStream(counted);
+            out.writeInt(MAGIC);
+            writeVarint(out, VERSION);
+        }
+
+        void view(canvasex.ProjectData pd) throws IOException {
+            Bytes b = new Bytes(64);
+            encodeView(b, pd.scale, pd.offX, pd.offY, pd.penSize, pd.drawColor, pd.textColor,
+                    pd.fontSize, pd.fontFamily, pd.fontStyle);
+            section(VIEW, b);
+        }
+
+        void generation(long gen) throws IOException {
+            Bytes b = new Bytes(10);
+            b.varint(gen);
+            section(META, b);
+        }
+
+        void shape(canvasex.DrawingShape s) throws IOException {
+            if (s instanceof ShapeSection sec) {   // not loaded from its file: its shapes
+                for (canvasex.DrawingShape t : sec.read()) shape(t);
+                return;
+            }
+            Rectangle b = s.getBounds();
+            if (shapeCount >= SECTION_MIN_SHAPES && !near(box, b)) flushShapes();
+            int blob = s instanceof canvasex.CanvasView.ImageShape im ? blob(im.bytes()) : 0;
+            if (!enc.shape(s, blob)) return;
+            if (box == null) box = new Rectangle(b); else box.add(b);
+            shapeCount++;
+            if (enc.records.size() >= SECTION_BYTES) flushShapes();
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                flushShapes();
+                Bytes b = new Bytes(toc.size() + 8);
+                b.varint(tocEntries);
+                b.write(toc.buf, 0, toc.size());
+                out.writeByte(TOC);
+                writeVarint(out, b.size());
+                long at = counted.n;
+                out.write(b.buf, 0, b.size());
+                out.writeByte(END);
+                writeVarint(out, 0);
+                out.writeLong(at);
+                out.writeInt(b.size());
+                out.writeInt(TOC_MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+
+        // image bytes go out in their own section right away; 0 = no bytes
+        private int blob(byte[] bytes) throws IOException {
+            if (bytes == null) return 0;
+            Integer id = blobs.get(bytes);
+            if (id != null) return id;
+            id = blobs.size() + 1;
+            blobs.put(bytes, id);
+            Bytes head = new Bytes(8);
+            head.varint(id);
+            out.writeByte(BLOB);
+            writeVarint(out, head.size() + bytes.length);
+            entry(BLOB, head.size() + bytes.length);
+            toc.varint(id);
+            out.write(head.buf, 0, head.size());
+            out.write(bytes);
+            return id;
+        }
+
+        private void flushShapes() throws IOException {
+            if (enc.newStyles > 0) {
+                Bytes b = new Bytes(enc.styles.size() + 8);
+                enc.takeStyles(b);
+                section(STYLES, b);
+            }
+            if (shapeCount == 0) return;
+            Bytes head = new Bytes(8);
+            head.varint(shapeCount);
+            out.writeByte(SHAPES);
+            writeVarint(out, head.size() + enc.records.size());
+            entry(SHAPES, head.size() + enc.records.size());
+            toc.varint(shapeCount);
+            toc.varint(zigzag(box.x)); toc.varint(zigzag(box.y));
+            toc.varint(box.width); toc.varint(box.height);
+            out.write(head.buf, 0, head.size());
+            out.write(enc.records.buf, 0, enc.records.size());
+            enc.records.reset();
+            enc.resetCursor();
+            shapeCount = 0;
+            box = null;
+        }
+
+        private void section(int tag, Bytes b) throws IOException {
+            out.writeByte(tag);
+            writeVarint(out, b.size());
+            entry(tag, b.size());
+            out.write(b.buf, 0, b.size());
+        }
+
+        // TOC entry for the section payload starting here
+        private void entry(int tag, int length) {
+            long at = counted.n;
+            toc.writeByte(tag);
+            toc.varint(at - tocAt);
+            toc.varint(length);
+            tocAt = at;
+            tocEntries++;
+        }
+
+        private static boolean near(Rectangle box, Rectangle b) {
+            if (box == null) return true;
+            return Math.max(box.x + box.width, b.x + b.width) - Math.min(box.x, b.x) <= SECTION_EXTENT
+                    && Math.max(box.y + box.height, b.y + b.height) - Math.min(box.y, b.y) <= SECTION_EXTENT;
+        }
+    }
+
+    // file position for the TOC
+    private static final class Counting extends FilterOutputStream {
+        long n;
+
+        Counting(OutputStream out) { super(out); }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b);
+            n++;
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            n += len;
+        }
+    }
+
+    // ===== Reader
+
+    /** Streaming reader: view() after construction, then next() until null. */
+    static final class Reader {
+        private final DataInputStream in;
+        private final Decoder dec = new Decoder();
+        private canvasex.ProjectData view;
+        private long generation;
+        private byte[] buf = new byte[0];
+        private int left;                    // records left in the current shapes section
+        private boolean done;
+
+        Reader(InputStream is) throws IOException {
+            in = new DataInputStream(is instanceof BufferedInputStream ? is : new BufferedInputStream(is, 1 << 16));
+            if (in.readInt() != MAGIC) throw new IOException("not a Freeplay project (v2)");
+            int version = (int) readVarint(in);
+            if (version > VERSION) throw new IOException("project was written by a newer version (format " + version + ")");
+            nextSection();   // up to the first shapes (VIEW always comes first)
+        }
+
+        /** View + settings, with an empty shape list. */
+        canvasex.ProjectData view() throws IOException {
+            if (view == null) throw new IOException("project has no view section");
+            return view;
+        }
+
+        /** Journal generation (META); complete once next() returned null. */
+        long generation() { return generation; }
+
+        canvasex.DrawingShape next() throws IOException {
+            while (left == 0) {
+                if (done) return null;
+                nextSection();
+            }
+            left--;
+            return dec.shape();
+        }
+
+        private void nextSection() throws IOException {
+            while (true) {
+                int tag = in.read();
+                if (tag < 0) throw new EOFException("project file is truncated");
+                int len = (int) readVarint(in);
+                switch (tag) {
+                    case END -> { done = true; return; }
+                    case VIEW -> view = decodeView(in.readNBytes(len));
+                    case STYLES -> {
+                        dec.reset(in.readNBytes(len));
+                        dec.styles();
+                    }
+                    case BLOB -> {
+                        long id = readVarint(in);
+                        dec.blob((int) id, in.readNBytes(len - varintSize(id)));
+                    }
+                    case META -> {
+                        DataInputStream d = new DataInputStream(new ByteArrayInputStream(in.readNBytes(len)));
+                        generation = readVarint(d);
+                    }
+                    case SHAPES -> {
+                        if (buf.length < len) buf = new byte[Math.max(len, SECTION_BYTES + 1024)];
+                        in.readFully(buf, 0, len);
+                        dec.reset(buf);
+                        left = dec.varint();
+                        return;
+                    }
+                    default -> in.skipNBytes(len);   // newer section type
+                }
+            }
+        }
+    }
+
+    // ===== view settings (VIEW section; the journal logs view changes with the same bytes)
+
+    static void encodeView(Bytes b, double scale, double offX, double offY, int penSize, Color draw, Color text,
+                           int fontSize, String fontFamily, int fontStyle) {
+        b.writeDouble(scale); b.writeDouble(offX); b.writeDouble(offY);
+        b.varint(penSize);
+        b.writeInt(draw.getRGB()); b.writeInt(text.getRGB());
+        b.varint(fontSize); b.string(fontFamily); b.varint(fontStyle);
+    }
+
+    /** The settings as a ProjectData without shapes (and without a style table). */
+    static canvasex.ProjectData decodeView(byte[] bytes) throws IOException {
+        DataInputStream d = new DataInputStream(new ByteArrayInputStream(bytes));
+        double scale = d.readDouble(), offX = d.readDouble(), offY = d.readDouble();
+        int penSize = (int) readVarint(d);
+        Color draw = new Color(d.readInt(), true), text = new Color(d.readInt(), true);
+        int fontSize = (int) readVarint(d);
+        String family = readString(d);
+        int fontStyle = (int) readVarint(d);
+        canvasex.ProjectData pd = new canvasex.ProjectData(List.of(), scale, offX, offY, penSize, draw, text,
+                fontSize, family, fontStyle);
+        pd.styles = null;
+        return pd;
+    }
+
+    // ===== shape records
+
+    /** Encodes shape records into records, collecting the definitions of newly used styles. */
+    static final class Encoder {
+        final Bytes records;
+        final Bytes styles = new Bytes(256);   // definitions not handed out yet
+        int newStyles;
+        private int styleCount;
+        private int[] fileStyle = new int[64];  // process style id -> file id + 1
+        private int cx, cy;                      // delta cursor
+
+        Encoder(int capacity) { records = new Bytes(capacity); }
+
+        /** Appends s; images refer to blob (0 = no bytes). False for shapes the format doesn't know. */
+        boolean shape(canvasex.DrawingShape s, int blob) {
+            Bytes r = records;
+            if (s instanceof canvasex.StrokeShape st) {
+                record(STROKE, st.style);
+                r.varint(st.n);
+                for (int i = 0; i < st.n; i++) point(st.xy[2 * i], st.xy[2 * i + 1]);
+            } else if (s instanceof canvasex.LineShape l) {
+                record(LINE, l.style);
+                pair(l.a, l.b);
+            } else if (s instanceof canvasex.RectShape rs) {
+                record(RECT, rs.style);
+                pair(rs.a, rs.b);
+            } else if (s instanceof canvasex.OvalShape o) {
+                record(OVAL, o.style);
+                pair(o.a, o.b);
+            } else if (s instanceof canvasex.TextShape t) {
+                record(TEXT, t.style);
+                point(t.pos.x, t.pos.y);
+                r.string(t.text);
+            } else if (s instanceof canvasex.CanvasView.ImageShape im) {
+                r.writeByte(IMAGE);
+                point(im.x, im.y);
+                r.varint(im.width); r.varint(im.height);
+                r.varint(blob);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        /** STYLES payload (count + definitions) for the styles first used since the last call. */
+        void takeStyles(Bytes dst) {
+            dst.varint(newStyles);
+            dst.write(styles.buf, 0, styles.size());
+            styles.reset();
+            newStyles = 0;
+        }
+
+        void resetCursor() { cx = cy = 0; }
+
+        private void record(int tag, int style) {
+            records.writeByte(tag);
+            if (style >= fileStyle.length) fileStyle = Arrays.copyOf(fileStyle, Math.max(style + 1, fileStyle.length * 2));
+            int id = fileStyle[style] - 1;
+            if (id < 0) {
+                StyleTable.Style st = StyleTable.get(style);
+                styles.writeInt(st.argb); styles.varint(st.size); styles.writeByte(st.round ? 1 : 0);
+                styles.string(st.fontFamily == null ? "" : st.fontFamily);
+                styles.varint(st.fontStyle); styles.varint(st.fontSize);
+                id = styleCount++;
+                newStyles++;
+                fileStyle[style] = id + 1;
+            }
+            records.varint(id);
+        }
+
+        private void point(int x, int y) {
+            records.varint(zigzag(x - cx)); records.varint(zigzag(y - cy));
+            cx = x; cy = y;
+        }
+
+        private void pair(Point a, Point b) {
+            point(a.x, a.y);
+            point(b.x, b.y);
+        }
+    }
+
+    /** Decodes what Encoder wrote from a byte[] (reset(...) per section / frame). */
+    static class Decoder {
+        private final List<Integer> styles;                       // file style id -> process id
+        private final List<byte[]> blobs = new ArrayList<>();     // id -> image bytes (0 = none)
+        byte[] buf;
+        int pos;
+        private int cx, cy;
+
+        Decoder() { styles = new ArrayList<>(); }
+
+        /** Shares shared's style table, which must be complete (one decoder per thread, ProjectMap). */
+        Decoder(Decoder shared) { styles = shared.styles; }
+
+        void reset(byte[] b) {
+            buf = b;
+            pos = 0;
+            cx = cy = 0;
+        }
+
+        void blob(int id, byte[] bytes) {
+            while (blobs.size() <= id) blobs.add(null);
+            blobs.set(id, bytes);
+        }
+
+        byte[] blob(int id) { return id < blobs.size() ? blobs.get(id) : null; }
+
+        /** A STYLES payload: interned into this process' table. */
+        void styles() {
+            for (int n = varint(); n > 0; n--) {
+                int argb = readInt(), size = varint();
+                boolean round = buf[pos++] != 0;
+                String family = string();
+                int fontStyle = varint(), fontSize = varint();
+                styles.add(StyleTable.intern(new StyleTable.Style(argb, size, round,
+                        family.isEmpty() ? null : family, fontStyle, fontSize)));
+            }
+        }
+
+        canvasex.DrawingShape shape() throws IOException {
+            int tag = buf[pos++];
+            switch (tag) {
+                case STROKE -> {
+                    int style = style();
+                    int n = varint();
+                    int[] xy = new int[2 * n];
+                    for (int i = 0; i < n; i++) {
+                        xy[2 * i] = cx += unzigzag(varint());
+                        xy[2 * i + 1] = cy += unzigzag(varint());
+                    }
+                    return new canvasex.StrokeShape(xy, n, style);
+                }
+                case LINE -> { int style = style(); return new canvasex.LineShape(point(), point(), style); }
+                case RECT -> { int style = style(); return new canvasex.RectShape(point(), point(), style); }
+                case OVAL -> { int style = style(); return new canvasex.OvalShape(point(), point(), style); }
+                case TEXT -> {
+                    int style = style();
+                    Point p = point();
+                    return new canvasex.TextShape(string(), p, style);
+                }
+                case IMAGE -> {
+                    Point p = point();
+                    canvasex.CanvasView.ImageShape im = new canvasex.CanvasView.ImageShape(p.x, p.y, varint(), varint());
+                    im.imgBytes = blob(varint());
+                    return im;
+                }
+                default -> throw new IOException("unknown shape record " + tag);
+            }
+        }
+
+        int varint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = buf[pos++];
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        long varLong() {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        int readInt() {
+            int v = (buf[pos] & 0xFF) << 24 | (buf[pos + 1] & 0xFF) << 16 | (buf[pos + 2] & 0xFF) << 8 | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        double readDouble() {
+            long hi = readInt() & 0xFFFFFFFFL, lo = readInt() & 0xFFFFFFFFL;
+            return Double.longBitsToDouble(hi << 32 | lo);
+        }
+
+        String string() {
+            int n = varint();
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+
+        private int style() throws IOException {
+            int id = varint();
+            if (id >= styles.size()) throw new IOException("undefined style " + id);
+            return styles.get(id);
+        }
+
+        private Point point() {
+            cx += unzigzag(varint());
+            cy += unzigzag(varint());
+            return new Point(cx, cy);
+        }
+    }
+
+    // ===== encoding helpers
+
+    /** Growable byte buffer with the varint / fixed-width writes used above. */
+    static final class Bytes {
+        byte[] buf;
+        private int n;
+
+        Bytes(int capacity) { buf = new byte[capacity]; }
+
+        int size() { return n; }
+        void reset() { n = 0; }
+
+        void writeByte(int b) {
+            if (n == buf.length) buf = Arrays.copyOf(buf, n * 2);
+            buf[n++] = (byte) b;
+        }
+
+        void write(byte[] b, int off, int len) {
+            if (n + len > buf.length) buf = Arrays.copyOf(buf, Math.max(n + len, buf.length * 2));
+            System.arraycopy(b, off, buf, n, len);
+            n += len;
+        }
+
+        void writeInt(int v) {
+            writeByte(v >>> 24); writeByte(v >>> 16); writeByte(v >>> 8); writeByte(v);
+        }
+
+        void writeDouble(double d) {
+            long v = Double.doubleToLongBits(d);
+            writeInt((int) (v >>> 32)); writeInt((int) v);
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            write(b, 0, b.length);
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes((int) readVarint(in)), StandardCharsets.UTF_8);
+    }
+
+    static int varintSize(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) { v >>>= 7; n++; }
+        return n;
+    }
+
+    static long zigzag(int v) { return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL; }
+
+    static int unzigzag(int v) { return (v >>> 1) ^ -(v & 1); }
+}
@@ -0,0 +1,218 @@
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ProjectMap — a v2 project opened through FileChannel.map instead of being read.
+ *
+ * The TOC at the end of the file (ProjectFormat) gives every section's offset; only the view and
+ * the styles are decoded on open. The document is one Section per SHAPES section, with the
+ * section's bounding box from the TOC, so the spatial index and the tile cache work on it as on
+ * any shape: a Section decodes its shapes from the mapping when it is first painted (kept softly,
+ * the GC may drop them again and the next paint decodes them anew) and CanvasView.expand replaces
+ * it with its shapes once the user picks something in it. Image bytes are copied out of the
+ * mapping when a section using them is decoded.
+ *
+ * Files without a TOC (older v2, serialized ProjectData) are read the usual way (canvasex.openProject).
+ *
+ * Windows keeps a mapped file locked until the mapping is garbage collected, so saving over the
+ * opened file (or the autosave replacing itself) would fail there. On Windows a private copy in
+ * the temp directory is mapped instead.
+ */
+public final class ProjectMap {
+
+    // mapped windows; a section never spans two
+    private static final long MAP_BYTES = 1L << 30;
+    private static final boolean MAP_COPY = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final File file;
+    private final long[] mapStart;
+    private final MappedByteBuffer[] maps;
+    private final ProjectFormat.Decoder styles = new ProjectFormat.Decoder();
+    private final Map<Integer, long[]> blobs = new HashMap<>();   // id -> offset, length
+    private final Map<Integer, SoftReference<byte[]>> blobCache = new ConcurrentHashMap<>();
+    private final List<Section> sections = new ArrayList<>();
+    private canvasex.ProjectData view;
+    private long journalGen;
+
+    private ProjectMap(File file, long[] mapStart, MappedByteBuffer[] maps) {
+        this.file = file;
+        this.mapStart = mapStart;
+        this.maps = maps;
+    }
+
+    /** Maps file if it has a TOC; null if it has to be read instead. */
+    static ProjectMap open(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 4 + ProjectFormat.TRAILER) return null;
+            ByteBuffer head = ByteBuffer.allocate(4);
+            ch.read(head, 0);
+            if (head.getInt(0) != ProjectFormat.MAGIC) return null;
+            ByteBuffer tail = ByteBuffer.allocate(ProjectFormat.TRAILER);
+            ch.read(tail, size - ProjectFormat.TRAILER);
+            long tocAt = tail.getLong(0);
+            int tocLen = tail.getInt(8);
+            if (tail.getInt(12) != ProjectFormat.TOC_MAGIC) return null;
+            if (tocAt < 0 || tocLen < 0 || tocAt + tocLen > size) throw new IOException("damaged table of contents");
+            ByteBuffer tb = ByteBuffer.allocate(tocLen);
+            ch.read(tb, tocAt);
+
+            // entries: tag, offset, length (+ count and box / blob id)
+            ProjectFormat.Decoder toc = new ProjectFormat.Decoder();
+            toc.reset(tb.array());
+            int n = toc.varint();
+            int[] tags = new int[n], lengths = new int[n];
+            long[] offsets = new long[n];
+            int[][] extra = new int[n][];
+            long at = 0;
+            for (int i = 0; i < n; i++) {
+                tags[i] = toc.buf[toc.pos++];
+                offsets[i] = at += toc.varLong();
+                lengths[i] = toc.varint();
+                if (tags[i] == ProjectFormat.SHAPES) {
+                    extra[i] = new int[] { toc.varint(), ProjectFormat.unzigzag(toc.varint()),
+                            ProjectFormat.unzigzag(toc.varint()), toc.varint(), toc.varint() };
+                } else if (tags[i] == ProjectFormat.BLOB) {
+                    extra[i] = new int[] { toc.varint() };
+                }
+                if (offsets[i] + lengths[i] > size) throw new IOException("damaged table of contents");
+            }
+
+            // map in windows of up to MAP_BYTES that start at a section
+            List<Long> starts = new ArrayList<>();
+            List<MappedByteBuffer> maps = new ArrayList<>();
+            try (FileChannel mc = MAP_COPY ? privateCopy(file) : null) {
+                FileChannel src = mc != null ? mc : ch;
+                for (int i = 0; i < n; ) {
+                    long start = offsets[i], end = offsets[i] + lengths[i];
+                    int j = i + 1;
+                    while (j < n && offsets[j] + lengths[j] - start <= MAP_BYTES) end = Math.max(end, offsets[j] + lengths[j++]);
+                    starts.add(start);
+                    maps.add(src.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                    i = j;
+                }
+            }
+            long[] mapStart = new long[starts.size()];
+            for (int i = 0; i < mapStart.length; i++) mapStart[i] = starts.get(i);
+            ProjectMap pm = new ProjectMap(file, mapStart, maps.toArray(new MappedByteBuffer[0]));
+
+            for (int i = 0; i < n; i++) {
+                switch (tags[i]) {
+                    case ProjectFormat.VIEW -> pm.view = ProjectFormat.decodeView(pm.bytes(offsets[i], lengths[i]));
+                    case ProjectFormat.STYLES -> {
+                        pm.styles.reset(pm.bytes(offsets[i], lengths[i]));
+                        pm.styles.styles();
+                    }
+                    case ProjectFormat.META -> {
+                        ProjectFormat.Decoder d = new ProjectFormat.Decoder();
+                        d.reset(pm.bytes(offsets[i], lengths[i]));
+                        pm.journalGen = d.varLong();
+                    }
+                    case ProjectFormat.BLOB -> {
+                        int id = extra[i][0], skip = ProjectFormat.varintSize(id);
+                        pm.blobs.put(id, new long[] { offsets[i] + skip, lengths[i] - skip });
+                    }
+                    case ProjectFormat.SHAPES -> {
+                        int[] e = extra[i];
+                        pm.sections.add(pm.new Section(offsets[i], lengths[i], e[0], new Rectangle(e[1], e[2], e[3], e[4])));
+                    }
+                    default -> {}
+                }
+            }
+            if (pm.view == null) throw new IOException("project has no view section");
+            return pm;
+        }
+    }
+
+    // copy of file to map (Windows); deleted on exit, or by a later open if it was still mapped then
+    private static FileChannel privateCopy(File file) throws IOException {
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> old = Files.newDirectoryStream(tmp, "freeplay-map-*.cvs")) {
+            for (Path p : old) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ex) {
+                    // still mapped (this or another instance)
+                }
+            }
+        }
+        Path copy = Files.createTempFile("freeplay-map-", ".cvs");
+        copy.toFile().deleteOnExit();
+        Files.copy(file.toPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+        return FileChannel.open(copy, StandardOpenOption.READ);
+    }
+
+    /** View + settings; the shapes are the sections (nothing decoded yet). */
+    canvasex.ProjectData project() {
+        canvasex.ProjectData pd = new canvasex.ProjectData(List.of(), view.scale, view.offX, view.offY, view.penSize,
+                view.drawColor, view.textColor, view.fontSize, view.fontFamily, view.fontStyle);
+        pd.styles = null;
+        pd.shapes.addAll(sections);
+        pd.journalGen = journalGen;
+        return pd;
+    }
+
+    // copy of a range of the file (any thread: absolute reads of the mapping)
+    private byte[] bytes(long offset, int length) {
+        int m = Arrays.binarySearch(mapStart, offset);
+        if (m < 0) m = -m - 2;
+        byte[] b = new byte[length];
+        maps[m].get((int) (offset - mapStart[m]), b, 0, length);
+        return b;
+    }
+
+    private byte[] blob(int id) {
+        long[] at = blobs.get(id);
+        if (at == null) return null;
+        SoftReference<byte[]> ref = blobCache.get(id);
+        byte[] b = ref != null ? ref.get() : null;
+        if (b == null) {
+            b = bytes(at[0], (int) at[1]);
+            blobCache.put(id, new SoftReference<>(b));
+        }
+        return b;
+    }
+
+    /** One SHAPES section of the file, standing in for its shapes until they are needed. */
+    final class Section extends ShapeSection {
+        private final long offset;
+        private final int length;
+
+        private Section(long offset, int length, int count, Rectangle bounds) {
+            super(count, bounds);
+            this.offset = offset; this.length = length;
+        }
+
+        @Override List<canvasex.DrawingShape> read() {
+            ProjectFormat.Decoder d = new ProjectFormat.Decoder(styles) {
+                @Override byte[] blob(int id) { return ProjectMap.this.blob(id); }
+            };
+            d.reset(bytes(offset, length));
+            int n = d.varint();
+            List<canvasex.DrawingShape> out = new ArrayList<>(n);
+            try {
+                for (int i = 0; i < n; i++) out.add(d.shape());
+            } catch (IOException ex) {
+                // the rest of a damaged section is lost, as with the streaming reader
+                System.err.println("Error reading " + file.getAbsolutePath() + " at " + offset + ": " + ex.getMessage());
+            }
+            return out;
+        }
+    }
+}
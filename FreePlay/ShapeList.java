@@ -0,0 +1,145 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * ShapeList — the canvas' shape list (paint order), stored in chunks of 1024 references so that
+ * snapshot() is cheap: it shares the chunks with the snapshot and the list copies a chunk only
+ * when it next writes to it. A snapshot never changes, so a background thread (autosave) can
+ * read it while the EDT keeps drawing.
+ *
+ * Appends and removes at the end copy at most one chunk; removing from the middle shifts (and so
+ * copies) the chunks after it, like ArrayList shifts its array. Not thread-safe itself (EDT).
+ */
+public final class ShapeList extends AbstractList<canvasex.DrawingShape> implements RandomAccess {
+
+    private static final int SHIFT = 10, CHUNK = 1 << SHIFT, MASK = CHUNK - 1;
+
+    private Object[][] chunks = new Object[8][];
+    private int[] owner = new int[8];     // generation allowed to write a chunk in place
+    private int gen = 1;                  // bumped by snapshot(): every existing chunk becomes shared
+    private int size;
+
+    @Override public int size() { return size; }
+
+    @Override public canvasex.DrawingShape get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        return (canvasex.DrawingShape) chunks[i >>> SHIFT][i & MASK];
+    }
+
+    @Override public boolean add(canvasex.DrawingShape s) {
+        int ci = size >>> SHIFT;
+        if (ci == chunks.length) {
+            chunks = Arrays.copyOf(chunks, ci * 2);
+            owner = Arrays.copyOf(owner, ci * 2);
+        }
+        if (chunks[ci] == null) {
+            chunks[ci] = new Object[CHUNK];
+            owner[ci] = gen;
+        } else {
+            writable(ci);
+        }
+        chunks[ci][size & MASK] = s;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override public canvasex.DrawingShape remove(int i) {
+        canvasex.DrawingShape old = get(i);
+        int last = size - 1;
+        for (int ci = i >>> SHIFT; ci <= last >>> SHIFT; ci++) writable(ci);
+        // shift i+1..last one to the left, chunk by chunk
+        for (int j = i; j < last; ) {
+            Object[] c = chunks[j >>> SHIFT];
+            int off = j & MASK, n = Math.min(MASK - off, last - j);
+            System.arraycopy(c, off + 1, c, off, n);
+            j += n;
+            if (j < last && (j & MASK) == MASK) {
+                c[MASK] = chunks[(j >>> SHIFT) + 1][0];
+                j++;
+            }
+        }
+        chunks[last >>> SHIFT][last & MASK] = null;
+        size = last;
+        modCount++;
+        return old;
+    }
+
+    /** Replaces the shape at i by parts, in order (the rest moves up; O(size - i)). */
+    void replace(int i, List<canvasex.DrawingShape> parts) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        Object[] tail = new Object[size - i - 1];
+        for (int j = 0; j < tail.length; j++) tail[j] = get(i + 1 + j);
+        while (size > i) remove(size - 1);
+        for (canvasex.DrawingShape s : parts) add(s);
+        for (Object s : tail) add((canvasex.DrawingShape) s);
+    }
+
+    // shapes compare by identity and are in the list at most once; deletes mostly hit recent ones
+    @Override public boolean remove(Object o) {
+        int i = lastIndexOf(o);
+        if (i < 0) return false;
+        remove(i);
+        return true;
+    }
+
+    @Override public int indexOf(Object o) {
+        for (int ci = 0, base = 0; base < size; ci++, base += CHUNK) {
+            Object[] c = chunks[ci];
+            for (int j = 0, n = Math.min(CHUNK, size - base); j < n; j++) {
+                if (c[j] == o) return base + j;
+            }
+        }
+        return -1;
+    }
+
+    @Override public int lastIndexOf(Object o) {
+        for (int i = size - 1; i >= 0; ) {
+            Object[] c = chunks[i >>> SHIFT];
+            for (int j = i & MASK; j >= 0; j--, i--) {
+                if (c[j] == o) return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override public boolean contains(Object o) { return lastIndexOf(o) >= 0; }
+
+    @Override public void clear() {
+        // snapshots keep the old chunks
+        chunks = new Object[8][];
+        owner = new int[8];
+        size = 0;
+        modCount++;
+    }
+
+    /** Immutable view of the current contents; O(size / 1024). */
+    List<canvasex.DrawingShape> snapshot() {
+        Object[][] frozen = Arrays.copyOf(chunks, (size + MASK) >>> SHIFT);
+        gen++;
+        return new Snapshot(frozen, size);
+    }
+
+    private void writable(int ci) {
+        if (owner[ci] != gen) {
+            chunks[ci] = chunks[ci].clone();
+            owner[ci] = gen;
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<canvasex.DrawingShape> implements RandomAccess {
+        private final Object[][] chunks;
+        private final int size;
+
+        Snapshot(Object[][] chunks, int size) { this.chunks = chunks; this.size = size; }
+
+        @Override public int size() { return size; }
+
+        @Override public canvasex.DrawingShape get(int i) {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+            return (canvasex.DrawingShape) chunks[i >>> SHIFT][i & MASK];
+        }
+    }
+}
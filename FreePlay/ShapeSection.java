@@ -0,0 +1,53 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+/**
+ * ShapeSection — a run of consecutive shapes (paint order) that is kept as bytes, not as shapes:
+ * one entry in CanvasView's shape list and spatial index standing in for count shapes within
+ * bounds. The shapes are decoded when painted and kept softly (drop() lets go of them early);
+ * CanvasView.expand puts them back into the list when the user edits there, so a section itself
+ * is never selected or moved (not a MovableShape). Subclasses say where the bytes are: ProjectMap
+ * (a mapped project file), ChunkStore (paged-out parts of the document).
+ */
+public abstract class ShapeSection implements canvasex.DrawingShape {
+
+    final int count;
+    private final Rectangle bounds;
+    private SoftReference<List<canvasex.DrawingShape>> cache;
+
+    ShapeSection(int count, Rectangle bounds) {
+        this.count = count;
+        this.bounds = new Rectangle(bounds);
+    }
+
+    /** Freshly decoded shapes (saving: not kept). */
+    abstract List<canvasex.DrawingShape> read();
+
+    /** The shapes, decoded on first use and kept while memory allows (any thread). */
+    synchronized List<canvasex.DrawingShape> shapes() {
+        List<canvasex.DrawingShape> s = cache != null ? cache.get() : null;
+        if (s == null) {
+            s = read();
+            cache = new SoftReference<>(s);
+        }
+        return s;
+    }
+
+    /** The shapes if they are decoded right now, else none (does not decode). */
+    synchronized List<canvasex.DrawingShape> decoded() {
+        List<canvasex.DrawingShape> s = cache != null ? cache.get() : null;
+        return s != null ? s : List.of();
+    }
+
+    /** Forgets the decoded shapes (far from the view; the bytes are still there). */
+    synchronized void drop() { cache = null; }
+
+    // drawLod draws the shapes one by one (culled, with their own level of detail)
+    @Override public void draw(Graphics2D g) {
+        for (canvasex.DrawingShape s : shapes()) s.draw(g);
+    }
+
+    @Override public Rectangle getBounds() { return new Rectangle(bounds); }
+}
@@ -0,0 +1,161 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SoftShadow — the chrome's omnidirectional soft shadow as a cached image.
+ * The old look was built by filling the shape once per offset (dx, dy) inside a circle,
+ * for every layer r = radius..1, with alpha base * (1 - d / (radius + 0.5)).
+ * Here the shape's coverage mask is rasterized once and that stack of fills is evaluated
+ * per pixel as one weighted kernel (same result, since all fills share one colour),
+ * then kept in a small LRU cache keyed by geometry, device scale, radius, alpha and colour.
+ * A repaint is one drawImage.
+ */
+public final class SoftShadow {
+
+    private SoftShadow() {}
+
+    private static final int MAX_ENTRIES = 64;
+
+    private record Key(float[] path, double sx, double sy, double fx, double fy, int radius, float alpha, int argb) {
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && Arrays.equals(path, k.path) && sx == k.sx && sy == k.sy && fx == k.fx && fy == k.fy
+                    && radius == k.radius && alpha == k.alpha && argb == k.argb;
+        }
+        @Override public int hashCode() {
+            return ((Arrays.hashCode(path) * 31 + Double.hashCode(sx * 7 + sy)) * 31 + Double.hashCode(fx * 7 + fy)) * 31
+                    + radius * 131 + Float.hashCode(alpha) * 17 + argb;
+        }
+    }
+
+    // image origin relative to floor(device translation)
+    private record Entry(BufferedImage img, int x, int y) {}
+
+    private static final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, Entry> e) { return size() > MAX_ENTRIES; }
+    };
+
+    /** Paints the shadow of s (user space of g) in g's current colour. */
+    static void paint(Graphics2D g, Shape s, int radius, float baseAlpha) {
+        if (radius <= 0) return;
+        AffineTransform t = g.getTransform();
+        if (t.getShearX() != 0 || t.getShearY() != 0) t = new AffineTransform(t.getScaleX(), 0, 0, t.getScaleY(), t.getTranslateX(), t.getTranslateY());
+        double tx = Math.floor(t.getTranslateX()), ty = Math.floor(t.getTranslateY());
+        Color c = g.getColor();
+        Key k = new Key(pathKey(s), t.getScaleX(), t.getScaleY(), t.getTranslateX() - tx, t.getTranslateY() - ty,
+                radius, baseAlpha, c.getRGB());
+
+        Entry e;
+        synchronized (cache) { e = cache.get(k); }
+        if (e == null) {
+            e = render(s, k);
+            synchronized (cache) { cache.put(k, e); }
+        }
+        if (e.img == null) return;
+
+        AffineTransform old = g.getTransform();
+        g.setTransform(new AffineTransform());
+        g.drawImage(e.img, (int) tx + e.x, (int) ty + e.y, null);
+        g.setTransform(old);
+    }
+
+    private static float[] pathKey(Shape s) {
+        float[] buf = new float[64];
+        float[] seg = new float[6];
+        int n = 0;
+        for (PathIterator it = s.getPathIterator(null); !it.isDone(); it.next()) {
+            int type = it.currentSegment(seg);
+            int len = switch (type) {
+                case PathIterator.SEG_MOVETO, PathIterator.SEG_LINETO -> 2;
+                case PathIterator.SEG_QUADTO -> 4;
+                case PathIterator.SEG_CUBICTO -> 6;
+                default -> 0;
+            };
+            if (n + len + 1 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[n++] = type;
+            for (int i = 0; i < len; i++) buf[n++] = seg[i];
+        }
+        return Arrays.copyOf(buf, n);
+    }
+
+    private static Entry render(Shape s, Key k) {
+        AffineTransform dev = new AffineTransform(k.sx, 0, 0, k.sy, k.fx, k.fy);
+        Rectangle2D b = dev.createTransformedShape(s).getBounds2D();
+        if (b.isEmpty()) return new Entry(null, 0, 0);
+        int pad = (int) Math.ceil(k.radius * Math.max(Math.abs(k.sx), Math.abs(k.sy))) + 2;
+        int x0 = (int) Math.floor(b.getMinX()) - pad, y0 = (int) Math.floor(b.getMinY()) - pad;
+        int w = (int) Math.ceil(b.getMaxX()) + pad - x0, h = (int) Math.ceil(b.getMaxY()) + pad - y0;
+
+        // coverage mask, same antialiasing as the old g2.fill(s)
+        BufferedImage mi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D mg = mi.createGraphics();
+        mg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        mg.translate(-x0, -y0);
+        mg.transform(dev);
+        mg.setColor(Color.WHITE);
+        mg.fill(s);
+        mg.dispose();
+        int[] mp = ((DataBufferInt) mi.getRaster().getDataBuffer()).getData();
+        float[] m = new float[w * h];
+        for (int i = 0; i < m.length; i++) m[i] = (mp[i] >>> 24) / 255f;
+
+        float colorAlpha = ((k.argb >>> 24) & 255) / 255f;
+        int r = k.radius;
+        // one tap per offset; the offset is filled once for every layer >= its distance
+        int taps = 0;
+        double[] ox = new double[(2 * r + 1) * (2 * r + 1)], oy = new double[ox.length], a = new double[ox.length];
+        int[] count = new int[ox.length];
+        for (int dx = -r; dx <= r; dx++) {
+            for (int dy = -r; dy <= r; dy++) {
+                double d = Math.hypot(dx, dy);
+                if (d > r) continue;
+                int layers = r - Math.max(1, (int) Math.ceil(d)) + 1;
+                if (layers <= 0) continue;
+                float alpha = Math.max(0f, Math.min(1f, k.alpha * (float) (1.0 - (d / (r + 0.5)))));
+                ox[taps] = dx * k.sx; oy[taps] = dy * k.sy; a[taps] = alpha * colorAlpha; count[taps] = layers;
+                taps++;
+            }
+        }
+        double center = Math.max(0f, Math.min(1f, k.alpha * 0.35f)) * colorAlpha;
+
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] op = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        int rgb = k.argb & 0xFFFFFF;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                // SRC_OVER of n fills with alphas a_i leaves (1 - a_1)...(1 - a_n) of what was below
+                double keep = 1.0 - center * m[y * w + x];
+                for (int i = 0; i < taps; i++) {
+                    double cov = sample(m, w, h, x - ox[i], y - oy[i]);
+                    if (cov > 0) keep *= Math.pow(1.0 - a[i] * cov, count[i]);
+                }
+                int alpha = (int) Math.round((1.0 - keep) * 255);
+                if (alpha > 0) op[y * w + x] = (alpha << 24) | rgb;
+            }
+        }
+        return new Entry(out, x0, y0);
+    }
+
+    // bilinear lookup (offsets are whole pixels at 1x, fractional at e.g. 125% / 150% scaling)
+    private static double sample(float[] m, int w, int h, double x, double y) {
+        int ix = (int) Math.floor(x), iy = (int) Math.floor(y);
+        double fx = x - ix, fy = y - iy;
+        if (fx == 0 && fy == 0) return (ix < 0 || iy < 0 || ix >= w || iy >= h) ? 0 : m[iy * w + ix];
+        double v00 = at(m, w, h, ix, iy), v10 = at(m, w, h, ix + 1, iy);
+        double v01 = at(m, w, h, ix, iy + 1), v11 = at(m, w, h, ix + 1, iy + 1);
+        return (v00 * (1 - fx) + v10 * fx) * (1 - fy) + (v01 * (1 - fx) + v11 * fx) * fy;
+    }
+
+    private static double at(float[] m, int w, int h, int x, int y) {
+        return (x < 0 || y < 0 || x >= w || y >= h) ? 0 : m[y * w + x];
+    }
+}
@@ -0,0 +1,247 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SpatialIndex — loose quadtree over world-space rectangles.
+ * The root grows on demand so the (infinite) canvas has no fixed extent.
+ * Query results come back in insertion order, i.e. in paint (z) order: sequence numbers are
+ * SEQ_GAP apart, so items can be split (replace) or merged (merge) in place.
+ */
+public class SpatialIndex<T> {
+
+    private static final int NODE_CAPACITY = 16;
+    private static final double MIN_NODE_SIZE = 64;
+    private static final long SEQ_GAP = 1L << 20;
+
+    private static final class Entry<T> {
+        final T item;
+        long seq;
+        Rectangle bounds;
+        Node<T> node;
+        Entry(T item, long seq, Rectangle bounds) { this.item = item; this.seq = seq; this.bounds = bounds; }
+    }
+
+    private static final class Node<T> {
+        final double x, y, size;
+        final List<Entry<T>> items = new ArrayList<>();
+        Node<T>[] children;
+        Node<T> parent;
+
+        Node(double x, double y, double size) { this.x = x; this.y = y; this.size = size; }
+
+        boolean contains(Rectangle r) {
+            return r.x >= x && r.y >= y && r.x + (double) r.width <= x + size && r.y + (double) r.height <= y + size;
+        }
+
+        boolean intersects(Rectangle r) {
+            return r.x <= x + size && r.x + (double) r.width >= x && r.y <= y + size && r.y + (double) r.height >= y;
+        }
+
+        // the four quadrants of the square of side 2 * h at x, y
+        @SuppressWarnings("unchecked")
+        static <T> Node<T>[] quadrants(double x, double y, double h) {
+            Node<T>[] q = (Node<T>[]) new Node<?>[4];
+            q[0] = new Node<>(x, y, h); q[1] = new Node<>(x + h, y, h);
+            q[2] = new Node<>(x, y + h, h); q[3] = new Node<>(x + h, y + h, h);
+            return q;
+        }
+
+        void split() {
+            children = quadrants(x, y, size / 2);
+            for (Node<T> c : children) c.parent = this;
+            List<Entry<T>> keep = new ArrayList<>();
+            for (Entry<T> e : items) {
+                Node<T> c = childFor(e.bounds);
+                if (c != null) c.insert(e); else keep.add(e);
+            }
+            items.clear();
+            items.addAll(keep);
+        }
+
+        Node<T> childFor(Rectangle r) {
+            if (children == null) return null;
+            for (Node<T> c : children) if (c.contains(r)) return c;
+            return null;
+        }
+
+        void insert(Entry<T> e) {
+            Node<T> c = childFor(e.bounds);
+            if (c != null) { c.insert(e); return; }
+            items.add(e);
+            e.node = this;
+            if (children == null && items.size() > NODE_CAPACITY && size > MIN_NODE_SIZE) split();
+        }
+
+        boolean isEmpty() { return items.isEmpty() && children == null; }
+
+        void query(Rectangle r, List<Entry<T>> out) {
+            for (Entry<T> e : items) if (e.bounds.intersects(r)) out.add(e);
+            if (children != null) {
+                for (Node<T> c : children) if (c.intersects(r)) c.query(r, out);
+            }
+        }
+    }
+
+    private Node<T> root = new Node<>(-2048, -2048, 4096);
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private long nextSeq = 0;
+
+    // union of all bounds; grown on insert, recomputed lazily when an item on its edge leaves
+    private Rectangle extent = null;
+    private boolean extentStale = false;
+
+    public int size() { return entries.size(); }
+
+    public boolean contains(T item) { return entries.containsKey(item); }
+
+    public void insert(T item, Rectangle bounds) {
+        if (entries.containsKey(item)) { update(item, bounds); return; }
+        add(new Entry<>(item, nextSeq, bounds));
+        nextSeq += SEQ_GAP;
+    }
+
+    private void add(Entry<T> e) {
+        e.bounds = new Rectangle(e.bounds);
+        entries.put(e.item, e);
+        place(e);
+        growExtent(e.bounds);
+    }
+
+    public void remove(T item) {
+        Entry<T> e = entries.remove(item);
+        if (e == null) return;
+        unlink(e);
+        shrinkExtent(e.bounds);
+    }
+
+    /**
+     * Puts parts (with their bounds) in item's place, in list order, below next (the item after it
+     * in paint order, null if it is the last). False, and nothing changed, if there is no room
+     * between the two: renumber, then try again.
+     */
+    public boolean replace(T item, List<T> parts, List<Rectangle> bounds, T next) {
+        Entry<T> old = entries.get(item);
+        if (old == null) return true;
+        Entry<T> after = next != null ? entries.get(next) : null;
+        long room = (after != null ? after.seq : nextSeq) - old.seq;
+        if (room < parts.size()) return false;
+        long step = parts.isEmpty() ? 0 : room / parts.size();
+        remove(item);
+        for (int i = 0; i < parts.size(); i++) add(new Entry<>(parts.get(i), old.seq + i * step, bounds.get(i)));
+        return true;
+    }
+
+    /** Puts item in the place of parts (consecutive in paint order, first one lowest). */
+    public void merge(List<T> parts, T item, Rectangle bounds) {
+        Entry<T> first = entries.get(parts.get(0));
+        long seq = first != null ? first.seq : nextSeq;
+        for (T p : parts) remove(p);
+        if (first == null) nextSeq += SEQ_GAP;
+        add(new Entry<>(item, seq, bounds));
+    }
+
+    /** Numbers the items anew, SEQ_GAP apart, in the given paint order. */
+    public void renumber(List<T> order) {
+        long seq = 0;
+        for (T item : order) {
+            Entry<T> e = entries.get(item);
+            if (e != null) { e.seq = seq; seq += SEQ_GAP; }
+        }
+        nextSeq = seq;
+    }
+
+    // re-file an item after it moved or changed size (keeps its z-order)
+    public void update(T item, Rectangle bounds) {
+        Entry<T> e = entries.get(item);
+        if (e == null) { insert(item, bounds); return; }
+        if (e.bounds.equals(bounds)) return;
+        unlink(e);
+        shrinkExtent(e.bounds);
+        e.bounds = new Rectangle(bounds);
+        place(e);
+        growExtent(e.bounds);
+    }
+
+    public Rectangle boundsOf(T item) {
+        Entry<T> e = entries.get(item);
+        return e == null ? null : new Rectangle(e.bounds);
+    }
+
+    public void clear() {
+        entries.clear();
+        root = new Node<>(-2048, -2048, 4096);
+        nextSeq = 0;
+        extent = null;
+        extentStale = false;
+    }
+
+    /** Bounding box of everything in the index (null when empty). */
+    public Rectangle extent() {
+        if (extentStale) {
+            extent = null;
+            for (Entry<T> e : entries.values()) {
+                if (extent == null) extent = new Rectangle(e.bounds); else extent.add(e.bounds);
+            }
+            extentStale = false;
+        }
+        return extent == null ? null : new Rectangle(extent);
+    }
+
+    private void growExtent(Rectangle b) {
+        if (extentStale) return;
+        if (extent == null) extent = new Rectangle(b); else extent.add(b);
+    }
+
+    private void shrinkExtent(Rectangle b) {
+        if (extentStale || extent == null) return;
+        // only items touching the edge can make the extent smaller
+        if (b.x <= extent.x || b.y <= extent.y || b.x + b.width >= extent.x + extent.width
+                || b.y + b.height >= extent.y + extent.height) extentStale = true;
+    }
+
+    /** All items whose bounds intersect r, in insertion order. */
+    public List<T> query(Rectangle r) {
+        List<Entry<T>> hits = new ArrayList<>();
+        root.query(r, hits);
+        hits.sort((a, b) -> Long.compare(a.seq, b.seq));
+        List<T> out = new ArrayList<>(hits.size());
+        for (Entry<T> e : hits) out.add(e.item);
+        return out;
+    }
+
+    private void unlink(Entry<T> e) {
+        if (e.node == null) return;
+        e.node.items.remove(e);
+        // subtrees that became empty go (a long pan leaves a trail of them behind)
+        for (Node<T> n = e.node; n != null; n = n.parent) {
+            if (n.children != null) {
+                for (Node<T> c : n.children) if (!c.isEmpty()) return;
+                n.children = null;
+            }
+            if (!n.items.isEmpty()) return;
+        }
+    }
+
+    private void place(Entry<T> e) {
+        while (!root.contains(e.bounds)) grow(e.bounds);
+        root.insert(e);
+    }
+
+    // double the root towards r; the old root becomes one quadrant of the new one
+    private void grow(Rectangle r) {
+        Node<T> old = root;
+        boolean left = r.x < old.x;
+        boolean up = r.y < old.y;
+        double nx = left ? old.x - old.size : old.x;
+        double ny = up ? old.y - old.size : old.y;
+        Node<T> nr = new Node<>(nx, ny, old.size * 2);
+        nr.children = Node.quadrants(nx, ny, old.size);
+        int q = (left ? 1 : 0) + (up ? 2 : 0);
+        nr.children[q] = old;
+        for (Node<T> c : nr.children) c.parent = nr;
+        root = nr;
+    }
+}
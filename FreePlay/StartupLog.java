@@ -0,0 +1,45 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StartupLog — timeline of the startup milestones (main, frame built, first frame, interactive ...)
+ * in ms since the JVM started. Marks are cheap and thread-safe; with -Dfreeplay.startupLog=true
+ * the timeline is printed to stderr once the app reports itself interactive.
+ */
+public final class StartupLog {
+
+    private StartupLog() {}
+
+    private record Mark(String what, long nanos) {}
+
+    private static final long T0_NANOS = System.nanoTime();
+    // ms between process start and this class being loaded (0 if the OS does not tell)
+    private static final long JVM_MS = ProcessHandle.current().info().startInstant()
+            .map(t -> Math.max(0, System.currentTimeMillis() - t.toEpochMilli())).orElse(0L);
+
+    private static final List<Mark> marks = new ArrayList<>();
+    private static boolean finished;
+
+    static synchronized void mark(String what) {
+        if (!finished) marks.add(new Mark(what, System.nanoTime()));
+    }
+
+    /** Last mark; prints the timeline if enabled. Later marks are ignored. */
+    static synchronized void finish(String what) {
+        if (finished) return;
+        mark(what);
+        finished = true;
+        if (Boolean.getBoolean("freeplay.startupLog")) System.err.print(timeline());
+    }
+
+    static synchronized String timeline() {
+        StringBuilder sb = new StringBuilder();
+        long prev = 0;
+        for (Mark m : marks) {
+            long ms = JVM_MS + (m.nanos - T0_NANOS) / 1_000_000;
+            sb.append(String.format("startup %6d ms  (+%4d)  %s%n", ms, ms - prev, m.what));
+            prev = ms;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,113 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StyleTable — process-wide table of interned shape styles.
+ * Shapes store a small int id; the Color / BasicStroke / Font for a style
+ * are created once and shared by every shape using it.
+ */
+public final class StyleTable {
+
+    private StyleTable() {}
+
+    static final class Style implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int argb;
+        final int size;          // stroke width (0 for text)
+        final boolean round;     // round caps/joins (pen + line) vs. default stroke (rect/oval)
+        final String fontFamily; // null for non-text styles
+        final int fontStyle;
+        final int fontSize;
+
+        // derived objects, created on first use (volatile: shapes are also drawn by export threads)
+        private transient volatile Color color;
+        private transient volatile BasicStroke stroke;
+        private transient volatile Font font;
+
+        Style(int argb, int size, boolean round, String fontFamily, int fontStyle, int fontSize) {
+            this.argb = argb; this.size = size; this.round = round;
+            this.fontFamily = fontFamily; this.fontStyle = fontStyle; this.fontSize = fontSize;
+        }
+
+        Color color() {
+            Color c = color;
+            if (c == null) color = c = new Color(argb, true);
+            return c;
+        }
+
+        BasicStroke stroke() {
+            BasicStroke s = stroke;
+            if (s == null) {
+                s = round ? new BasicStroke(size, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND) : new BasicStroke(size);
+                stroke = s;
+            }
+            return s;
+        }
+
+        Font font() {
+            Font f = font;
+            if (f == null && fontFamily != null) font = f = StyleTable.font(fontFamily, fontStyle, fontSize);
+            return f;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Style s && argb == s.argb && size == s.size && round == s.round
+                    && fontStyle == s.fontStyle && fontSize == s.fontSize && Objects.equals(fontFamily, s.fontFamily);
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(argb, size, round, fontFamily, fontStyle, fontSize);
+        }
+    }
+
+    private record FontKey(String family, int style, int size) {}
+
+    private static final Map<Style, Integer> ids = new HashMap<>();
+    private static volatile Style[] table = new Style[64];
+    private static int count = 0;
+    private static final Map<FontKey, Font> fonts = new ConcurrentHashMap<>();
+
+    static synchronized int intern(Style s) {
+        Integer id = ids.get(s);
+        if (id != null) return id;
+        if (count == table.length) table = Arrays.copyOf(table, count * 2);
+        table[count] = s;
+        ids.put(s, count);
+        return count++;
+    }
+
+    static int stroke(Color c, int size, boolean round) {
+        return intern(new Style(c.getRGB(), size, round, null, 0, 0));
+    }
+
+    static int text(Color c, Font f) {
+        return intern(new Style(c.getRGB(), 0, false, f.getName(), f.getStyle(), f.getSize()));
+    }
+
+    static Style get(int id) { return table[id]; }
+
+    static synchronized List<Style> snapshot() {
+        return new ArrayList<>(Arrays.asList(table).subList(0, count));
+    }
+
+    /** Interns a saved table; returns saved id -> current id. */
+    static int[] importStyles(List<Style> saved) {
+        int[] map = new int[saved.size()];
+        for (int i = 0; i < map.length; i++) map[i] = intern(saved.get(i));
+        return map;
+    }
+
+    /** Shared Font instances for the canvas' text settings. */
+    static Font font(String family, int style, int size) {
+        return fonts.computeIfAbsent(new FontKey(family, style, size), k -> new Font(k.family, k.style, k.size));
+    }
+}
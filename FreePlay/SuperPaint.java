@@ -6,12 +6,10 @@ import java.awt.geom.RoundRectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 import java.awt.image.BufferedImage; // falls anderswo benötigt (master vip hate recht)
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 public class SuperPaint extends JFrame {
 
@@ -372,25 +370,8 @@ public class SuperPaint extends JFrame {
 
     // ===== Utils: Icons / Round Buttons / Dropdowns =====
     private static ImageIcon loadSvgIcon(String path, int size) {
-    try {
-        byte[] svgBytes = Files.readAllBytes(Paths.get(path));
-        TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(svgBytes));
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        TranscoderOutput output = new TranscoderOutput(out);
-
-        PNGTranscoder transcoder = new PNGTranscoder();
-        transcoder.addTranscodingHint(PNGTranscoder.KEY_WIDTH, (float) size);
-        transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, (float) size);
-        transcoder.transcode(input, output);
-
-        out.flush();
-        BufferedImage img = javax.imageio.ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
-        return new ImageIcon(img);
-    } catch (Exception e) {
-        e.printStackTrace();
-        return null;
-    }
+    BufferedImage img = IconService.icon(path, size, 1.0);
+    return img == null ? null : new ImageIcon(img);
 }
 
     
@@ -649,11 +630,21 @@ class ColorSpectrumPanel extends JPanel {
     private float hue = 0f, sat = 1f, bri = 1f;
     private final int size = 200;
     private final Runnable onChange;
+
+    // spectrum image + the size/brightness it was generated for
     private BufferedImage img;
+    private int imgW, imgH;
+    private float imgBri;
+    private int generation = 0;
+    private int reqW, reqH;     // what the newest background job is generating
+    private float reqBri;
+    // resize / brightness drags restart this; only the last change regenerates
+    private final Timer regen = new Timer(30, e -> regenerate());
 
     ColorSpectrumPanel(Runnable onChange) {
         this.onChange = onChange;
         setPreferredSize(new Dimension(size, size));
+        regen.setRepeats(false);
 
         addMouseListener(new MouseAdapter() {
             @Override public void mousePressed(MouseEvent e) { update(e); }
@@ -661,13 +652,17 @@ class ColorSpectrumPanel extends JPanel {
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override public void mouseDragged(MouseEvent e) { update(e); }
         });
+        addComponentListener(new ComponentAdapter() {
+            @Override public void componentResized(ComponentEvent e) { regen.restart(); }
+        });
     }
 
     private void update(MouseEvent e) {
-        float x = Math.max(0, Math.min(size-1, e.getX()));
-        float y = Math.max(0, Math.min(size-1, e.getY()));
-        hue = x / (float) size;
-        sat = 1f - (y / (float) size);
+        int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+        float x = Math.max(0, Math.min(w-1, e.getX()));
+        float y = Math.max(0, Math.min(h-1, e.getY()));
+        hue = x / (float) w;
+        sat = 1f - (y / (float) h);
         onChange.run();
         repaint();
     }
@@ -676,18 +671,52 @@ class ColorSpectrumPanel extends JPanel {
         return Color.getHSBColor(hue, sat, briOverride);
     }
 
+    public void setBrightness(float b) {
+        if (b == bri) return;
+        bri = b;
+        regen.restart();
+    }
+
+    // generate in the background; a newer request makes older results stale
+    private void regenerate() {
+        int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+        if (img != null && w == imgW && h == imgH && bri == imgBri) return;
+        if (generation > 0 && w == reqW && h == reqH && bri == reqBri) return;   // already on its way
+        reqW = w; reqH = h; reqBri = bri;
+        int gen = ++generation;
+        float b = bri;
+        CompletableFuture.supplyAsync(() -> spectrum(w, h, b)).thenAccept(im -> SwingUtilities.invokeLater(() -> {
+            if (gen != generation) return;
+            img = im; imgW = w; imgH = h; imgBri = b;
+            repaint();
+        }));
+    }
+
+    // HSB plane (hue over x, saturation over y) written straight into the int raster, in parallel row bands
+    static BufferedImage spectrum(int w, int h, float bri) {
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] px = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        int band = 16;
+        IntStream.range(0, (h + band - 1) / band).parallel().forEach(bi -> {
+            for (int y = bi * band, yEnd = Math.min(h, y + band); y < yEnd; y++) {
+                float s = 1f - (y / (float) h);
+                int row = y * w;
+                for (int x = 0; x < w; x++) px[row + x] = Color.HSBtoRGB(x / (float) w, s, bri);
+            }
+        });
+        return out;
+    }
+
     @Override protected void paintComponent(Graphics g) {
+        int w = getWidth(), h = getHeight();
         if (img == null) {
-            img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-            for (int x = 0; x < size; x++) {
-                for (int y = 0; y < size; y++) {
-                    float h = x / (float) size;
-                    float s = 1f - (y / (float) size);
-                    img.setRGB(x, y, Color.HSBtoRGB(h, s, bri));
-                }
-            }
+            // first paint: generate synchronously so the picker never shows empty
+            img = spectrum(Math.max(1, w), Math.max(1, h), bri);
+            imgW = img.getWidth(); imgH = img.getHeight(); imgBri = bri;
+        } else if ((w != imgW || h != imgH || bri != imgBri) && !regen.isRunning()) {
+            regen.restart();   // stale image is stretched until the new one arrives
         }
-        g.drawImage(img, 0, 0, null);
+        g.drawImage(img, 0, 0, w, h, null);
     }
 }
 
@@ -0,0 +1,158 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TileCache — rasterized world tiles of the committed document.
+ * Tiles are TILE_PX square and rendered once per zoom bucket (1/8 octave),
+ * then blitted (slightly rescaled to the exact zoom) on every repaint.
+ * LRU eviction keeps the cache under a byte budget.
+ */
+public class TileCache {
+
+    static final int TILE_PX = 256;
+    static final int BUCKETS_PER_OCTAVE = 8;
+    private static final long TILE_BYTES = (long) TILE_PX * TILE_PX * 4;
+
+    /**
+     * Draws the document into g (already scaled and translated to world space) for the given world rect.
+     * Returns false if nothing intersected the rect, so the tile can be kept without pixels.
+     */
+    interface TileRenderer { boolean render(Graphics2D g, Rectangle world); }
+
+    record Key(int bucket, int tx, int ty) {}
+
+    // placeholder for tiles without any content (no pixels allocated)
+    private static final BufferedImage EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private final long budgetBytes;
+    private long usedBytes = 0;
+
+    TileCache(long budgetBytes) { this.budgetBytes = budgetBytes; }
+
+    static int bucketFor(double scale) {
+        return (int) Math.round(Math.log(scale) / Math.log(2) * BUCKETS_PER_OCTAVE);
+    }
+
+    static double bucketScale(int bucket) {
+        return Math.pow(2, bucket / (double) BUCKETS_PER_OCTAVE);
+    }
+
+    static Rectangle2D tileWorldRect(Key k) {
+        double tws = TILE_PX / bucketScale(k.bucket);
+        return new Rectangle2D.Double(k.tx * tws, k.ty * tws, tws, tws);
+    }
+
+    /**
+     * Blits the tiles covering screenClip onto g (screen space, no view transform applied).
+     * Missing tiles are rendered through r first.
+     */
+    void paint(Graphics2D g, double scale, double offX, double offY, Rectangle screenClip, TileRenderer r) {
+        int bucket = bucketFor(scale);
+        double tws = TILE_PX / bucketScale(bucket);
+
+        double wx0 = (screenClip.x - offX) / scale, wy0 = (screenClip.y - offY) / scale;
+        double wx1 = (screenClip.x + screenClip.width - offX) / scale, wy1 = (screenClip.y + screenClip.height - offY) / scale;
+        int tx0 = (int) Math.floor(wx0 / tws), ty0 = (int) Math.floor(wy0 / tws);
+        int tx1 = (int) Math.floor(wx1 / tws), ty1 = (int) Math.floor(wy1 / tws);
+
+        Object oldInterp = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                BufferedImage img = tile(new Key(bucket, tx, ty), r);
+                if (img == EMPTY) continue;
+                // round tile edges (not sizes) so neighbours meet without seams
+                int sx0 = (int) Math.round(offX + tx * tws * scale), sy0 = (int) Math.round(offY + ty * tws * scale);
+                int sx1 = (int) Math.round(offX + (tx + 1) * tws * scale), sy1 = (int) Math.round(offY + (ty + 1) * tws * scale);
+                g.drawImage(img, sx0, sy0, sx1 - sx0, sy1 - sy0, null);
+            }
+        }
+        if (oldInterp != null) g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterp);
+    }
+
+    private BufferedImage tile(Key k, TileRenderer r) {
+        BufferedImage img = tiles.get(k);
+        if (img != null) return img;
+
+        Rectangle2D wr = tileWorldRect(k);
+        Rectangle world = wr.getBounds();
+        BufferedImage out = new BufferedImage(TILE_PX, TILE_PX, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = createTileGraphics(out, k);
+        boolean drewAnything = r.render(g, world);
+        g.dispose();
+        img = drewAnything ? out : EMPTY;
+
+        tiles.put(k, img);
+        if (img != EMPTY) usedBytes += TILE_BYTES;
+        evict();
+        return img;
+    }
+
+    private static Graphics2D createTileGraphics(BufferedImage out, Key k) {
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        double bs = bucketScale(k.bucket);
+        double tws = TILE_PX / bs;
+        g.scale(bs, bs);
+        g.translate(-k.tx * tws, -k.ty * tws);
+        return g;
+    }
+
+    /** Drops every cached tile (all zoom buckets) overlapping the given world bounds. */
+    void invalidate(Rectangle world) {
+        if (world == null) return;
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, BufferedImage> e = it.next();
+            if (tileWorldRect(e.getKey()).intersects(world)) {
+                if (e.getValue() != EMPTY) usedBytes -= TILE_BYTES;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Paints newly added content on top of the cached tiles it overlaps instead of dropping them.
+     * Only valid for content that ends up on top of everything else (plain appends).
+     */
+    void append(Rectangle world, TileRenderer r) {
+        if (world == null) return;
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, BufferedImage> e = it.next();
+            if (!tileWorldRect(e.getKey()).intersects(world)) continue;
+            if (e.getValue() == EMPTY) { it.remove(); continue; } // re-rendered lazily with pixels
+            Graphics2D g = createTileGraphics(e.getValue(), e.getKey());
+            r.render(g, world);
+            g.dispose();
+        }
+    }
+
+    void clear() {
+        tiles.clear();
+        usedBytes = 0;
+    }
+
+    long usedBytes() { return usedBytes; }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<Key, BufferedImage> e = it.next();
+            if (e.getValue() != EMPTY) usedBytes -= TILE_BYTES;
+            it.remove();
+        }
+        // cap the number of empty markers as well
+        while (tiles.size() > 4 * budgetBytes / TILE_BYTES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
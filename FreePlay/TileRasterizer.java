@@ -0,0 +1,86 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * TileRasterizer — renders a world region into one image by splitting the output
+ * into tiles that are rasterized concurrently, each with its own BufferedImage
+ * and Graphics2D. Tiles are copied into disjoint areas of the result, so the
+ * output does not depend on scheduling. Used for exports; safe to call off the EDT
+ * as long as the document is not modified while it runs.
+ */
+public class TileRasterizer {
+
+    static final int TILE_PX = 256;
+    private static final int TILES_PER_TASK = 2;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private TileRasterizer() {}
+
+    /**
+     * Renders a width x height image; worldToImage maps world coordinates to image pixels.
+     * The renderer gets a graphics already transformed to world space and the world rect of its tile.
+     */
+    static BufferedImage render(int width, int height, AffineTransform worldToImage, Color background,
+                                TileCache.TileRenderer r) {
+        BufferedImage out = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+        int cols = (out.getWidth() + TILE_PX - 1) / TILE_PX;
+        int rows = (out.getHeight() + TILE_PX - 1) / TILE_PX;
+        POOL.invoke(new TileTask(out, worldToImage, background, r, cols, 0, cols * rows));
+        return out;
+    }
+
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final BufferedImage out; final AffineTransform view; final Color bg; final TileCache.TileRenderer r;
+        final int cols, from, to;
+
+        TileTask(BufferedImage out, AffineTransform view, Color bg, TileCache.TileRenderer r, int cols, int from, int to) {
+            this.out = out; this.view = view; this.bg = bg; this.r = r; this.cols = cols; this.from = from; this.to = to;
+        }
+
+        @Override protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int i = from; i < to; i++) renderTile(i % cols, i / cols);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(out, view, bg, r, cols, from, mid), new TileTask(out, view, bg, r, cols, mid, to));
+        }
+
+        private void renderTile(int col, int row) {
+            int x = col * TILE_PX, y = row * TILE_PX;
+            int w = Math.min(TILE_PX, out.getWidth() - x), h = Math.min(TILE_PX, out.getHeight() - y);
+            BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = tile.createGraphics();
+            if (bg != null) {
+                g.setColor(bg);
+                g.fillRect(0, 0, w, h);
+            }
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.translate(-x, -y);
+            g.transform(view);
+            r.render(g, worldRect(x, y, w, h));
+            g.dispose();
+            // disjoint target areas -> no ordering or locking needed
+            out.getRaster().setDataElements(x, y, tile.getRaster());
+        }
+
+        private Rectangle worldRect(int x, int y, int w, int h) {
+            try {
+                Rectangle b = view.createInverse().createTransformedShape(new Rectangle(x, y, w, h)).getBounds();
+                b.grow(1, 1);
+                return b;
+            } catch (NoninvertibleTransformException ex) {
+                return new Rectangle(x, y, w, h);
+            }
+        }
+    }
+}
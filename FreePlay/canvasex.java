@@ -7,13 +7,19 @@ import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.io.*;
 import java.awt.datatransfer.StringSelection;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
 
 /**
  * canvasex — enhanced: serialisation + autosave + Ctrl+S
@@ -21,112 +27,478 @@ import org.apache.batik.transcoder.TranscoderOutput;
 public class canvasex extends JFrame {
 
     // ====== Canvas / Shapes
-    interface DrawingShape { void draw(Graphics2D g); }
+    interface DrawingShape {
+        void draw(Graphics2D g);
+        // world-space bounds incl. stroke width (culling + spatial index); cached by the shapes,
+        // so geometry is only changed through translate()/setBounds() which drop the cache
+        Rectangle getBounds();
+        // id into StyleTable, -1 for shapes without a style (images)
+        default int styleId() { return -1; }
+        default void setStyleId(int id) {}
+    }
+
+    // shapes the user can select and drag; not ShapeSection (shapeAt expands sections first)
+    interface MovableShape extends DrawingShape {
+        void translate(int dx, int dy);
+    }
+
+    // .cvs files written before the style table carry colour/size (or colour/font) on every shape
+    static int readStrokeStyle(ObjectInputStream.GetField f, boolean round) throws IOException {
+        if (!f.defaulted("style")) return f.get("style", 0);
+        return StyleTable.stroke((Color) f.get("color", Color.BLACK), f.get("size", 1), round);
+    }
+
+    static int readTextStyle(ObjectInputStream.GetField f) throws IOException, ClassNotFoundException {
+        if (!f.defaulted("style")) return f.get("style", 0);
+        return StyleTable.text((Color) f.get("color", Color.BLACK), (Font) f.get("font", null));
+    }
+
+    // shared render context for measuring text outside of paint
+    static final java.awt.font.FontRenderContext TEXT_FRC = new java.awt.font.FontRenderContext(null, true, false);
+
+    static Rectangle strokeBounds(Point a, Point b, int pad) {
+        int x = Math.min(a.x, b.x), y = Math.min(a.y, b.y);
+        return new Rectangle(x - pad, y - pad, Math.abs(a.x - b.x) + 2 * pad, Math.abs(a.y - b.y) + 2 * pad);
+    }
+
+    // ===== Level of detail (zoomed-out rendering) =====
+    static final int LOD_BANDS = 4;            // stroke simplification bands: 1/2, 1/4, 1/8, 1/16
+    static final double LOD_MIN_PX = 2.0;      // shapes smaller than this on screen become a box
+    static final int OVAL_ZOOM_BANDS = 8;      // oval outlines flattened for up to 256 device pixels per unit
+    static final double GREEK_TEXT_PX = 6.0;   // text lines lower than this are drawn as bars
+    static final Color GREEK_IMAGE_COLOR = new Color(180,180,180);
+
+    // draws s at the detail that fits px device pixels per world unit
+    static void drawLod(Graphics2D g, DrawingShape s, double px) {
+        if (s instanceof ShapeSection sec) {
+            Rectangle clip = g.getClipBounds();
+            for (DrawingShape t : sec.shapes()) {
+                if (clip == null || t.getBounds().intersects(clip)) drawLod(g, t, px);
+            }
+            return;
+        }
+        if (px >= 1.0) { s.draw(g); return; }
+        Rectangle b = s.getBounds();
+        if (Math.max(b.width, b.height) * px < LOD_MIN_PX) {
+            StyleTable.Style st = s.styleId() >= 0 ? StyleTable.get(s.styleId()) : null;
+            g.setColor(st != null ? st.color() : GREEK_IMAGE_COLOR);
+            double min = 1.0 / px; // at least one device pixel
+            g.fill(new Rectangle2D.Double(b.x, b.y, Math.max(min, b.width), Math.max(min, b.height)));
+            return;
+        }
+        if (s instanceof StrokeShape st) {
+            int band = Math.min(LOD_BANDS, (int) Math.floor(-Math.log(px) / Math.log(2)));
+            StyleTable.Style style = st.style();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(style.color());
+            g.setStroke(style.stroke());
+            g.draw(band <= 0 ? st.path() : st.lodPath(band));
+        } else if (s instanceof TextShape t && t.font().getSize2D() * 1.2 * px < GREEK_TEXT_PX) {
+            // greeking: one bar per line, roughly as wide as the text
+            StyleTable.Style style = t.style();
+            Color c = style.color();
+            g.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(), 110));
+            float size = t.font().getSize2D();
+            float lineHeight = size * 1.2f;
+            String[] lines = (t.text == null) ? new String[] { "" } : t.text.split("\n", -1);
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].isBlank()) continue;
+                float w = lines[i].length() * size * 0.5f;
+                g.fill(new Rectangle2D.Float(t.pos.x, t.pos.y + i * lineHeight - size * 0.55f, w, size * 0.5f));
+            }
+        } else {
+            s.draw(g);
+        }
+    }
 
     // Make shapes Serializable so we can persist them
-    static class LineShape implements DrawingShape, Serializable {
+    static class LineShape implements MovableShape, Serializable {
         private static final long serialVersionUID = 1L;
-        Point a, b; Color color; int size;
-        LineShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.color=c; this.size=s; }
+        Point a, b; int style;
+        transient volatile Rectangle bounds;
+        LineShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.style=StyleTable.stroke(c, s, true); }
+        LineShape(Point a, Point b, int style) { this.a=a; this.b=b; this.style=style; }
+        StyleTable.Style style() { return StyleTable.get(style); }
+        @Override public int styleId() { return style; }
+        @Override public void setStyleId(int id) { style = id; bounds = null; }
+        @Override public void translate(int dx, int dy) { a.translate(dx, dy); b.translate(dx, dy); bounds = null; }
         @Override public void draw(Graphics2D g) {
+            StyleTable.Style st = style();
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.setColor(color);
-            g.setStroke(new BasicStroke(size, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.setColor(st.color());
+            g.setStroke(st.stroke());
             g.drawLine(a.x, a.y, b.x, b.y);
         }
+        @Override public Rectangle getBounds() {
+            Rectangle c = bounds;
+            if (c == null) bounds = c = strokeBounds(a, b, style().size / 2 + 1);
+            return new Rectangle(c);
+        }
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField f = in.readFields();
+            a = (Point) f.get("a", null); b = (Point) f.get("b", null);
+            style = readStrokeStyle(f, true);
+        }
+    }
+
+    // whole freehand pen stroke: packed x0,y0,x1,y1,... rendered as a single path
+    static class StrokeShape implements MovableShape, Serializable {
+        private static final long serialVersionUID = 1L;
+        int[] xy; int n; int style;
+        transient volatile Path2D.Float path;
+        transient volatile Rectangle bounds;
+        // simplified paths per zoom band (band k is used for scales down to 2^-k), built on demand
+        transient volatile Path2D.Float[] lod;
+
+        StrokeShape(Point start, Color c, int s) { this(start, StyleTable.stroke(c, s, true)); }
+
+        StrokeShape(Point start, int style) {
+            this.xy = new int[32];
+            this.style = style;
+            add(start);
+        }
+
+        StrokeShape(int[] xy, int n, int style) { this.xy = xy; this.n = n; this.style = style; }
+
+        StyleTable.Style style() { return StyleTable.get(style); }
+        @Override public int styleId() { return style; }
+        @Override public void setStyleId(int id) { style = id; }
+
+        void add(Point p) {
+            if (n > 0 && xy[2*n-2] == p.x && xy[2*n-1] == p.y) return; // drop repeated samples
+            if (2*n + 2 > xy.length) xy = java.util.Arrays.copyOf(xy, xy.length * 2);
+            xy[2*n] = p.x; xy[2*n+1] = p.y;
+            n++;
+            path = null; bounds = null; lod = null;
+        }
+
+        // drop unused capacity once the stroke is finished
+        void trim() { if (xy.length != 2*n) xy = java.util.Arrays.copyOf(xy, 2*n); }
+
+        @Override public void translate(int dx, int dy) {
+            for (int i = 0; i < 2*n; i += 2) { xy[i] += dx; xy[i+1] += dy; }
+            path = null; bounds = null; lod = null;
+        }
+
+        Path2D.Float path() {
+            Path2D.Float p = path;
+            if (p == null) {
+                p = new Path2D.Float(Path2D.WIND_NON_ZERO, n);
+                p.moveTo(xy[0], xy[1]);
+                for (int i = 2; i < 2*n; i += 2) p.lineTo(xy[i], xy[i+1]);
+                path = p;
+            }
+            return p;
+        }
+
+        double distanceTo(int px, int py) {
+            if (n == 1) return Point.distance(xy[0], xy[1], px, py);
+            double best = Double.MAX_VALUE;
+            for (int i = 2; i < 2*n; i += 2) {
+                best = Math.min(best, Line2D.ptSegDistSq(xy[i-2], xy[i-1], xy[i], xy[i+1], px, py));
+            }
+            return Math.sqrt(best);
+        }
+
+        // bounds of the segment ending at point i (for dirty-region repaint while drawing)
+        Rectangle segmentBounds(int i) {
+            int j = Math.max(0, i - 1);
+            return strokeBounds(new Point(xy[2*j], xy[2*j+1]), new Point(xy[2*i], xy[2*i+1]), style().size / 2 + 1);
+        }
+
+        @Override public void draw(Graphics2D g) {
+            StyleTable.Style st = style();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(st.color());
+            g.setStroke(st.stroke());
+            g.draw(path());
+        }
+
+        Path2D.Float lodPath(int band) {
+            Path2D.Float[] l = lod;
+            Path2D.Float p = (l == null) ? null : l[band];
+            if (p == null) {
+                // Douglas-Peucker at half a screen pixel for the most zoomed-in scale of the band
+                boolean[] keep = simplify(xy, n, 0.5 * (1 << band));
+                p = new Path2D.Float();
+                p.moveTo(xy[0], xy[1]);
+                for (int i = 1; i < n; i++) if (keep[i]) p.lineTo(xy[2*i], xy[2*i+1]);
+                // publish a fresh array so concurrent renderers never see a half-built path
+                Path2D.Float[] next = (l == null) ? new Path2D.Float[LOD_BANDS + 1] : l.clone();
+                next[band] = p;
+                lod = next;
+            }
+            return p;
+        }
+
+        static boolean[] simplify(int[] xy, int n, double tol) {
+            boolean[] keep = new boolean[n];
+            keep[0] = true; keep[n-1] = true;
+            double tol2 = tol * tol;
+            int[] stack = new int[64];
+            int sp = 0;
+            stack[sp++] = 0; stack[sp++] = n - 1;
+            while (sp > 0) {
+                int last = stack[--sp], first = stack[--sp];
+                double maxD = -1; int idx = -1;
+                for (int i = first + 1; i < last; i++) {
+                    double d = Line2D.ptSegDistSq(xy[2*first], xy[2*first+1], xy[2*last], xy[2*last+1], xy[2*i], xy[2*i+1]);
+                    if (d > maxD) { maxD = d; idx = i; }
+                }
+                if (idx >= 0 && maxD > tol2) {
+                    keep[idx] = true;
+                    if (sp + 4 > stack.length) stack = java.util.Arrays.copyOf(stack, stack.length * 2);
+                    stack[sp++] = first; stack[sp++] = idx;
+                    stack[sp++] = idx; stack[sp++] = last;
+                }
+            }
+            return keep;
+        }
+
+        @Override public Rectangle getBounds() {
+            Rectangle cached = bounds;
+            if (cached != null) return new Rectangle(cached);
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < 2*n; i += 2) {
+                minX = Math.min(minX, xy[i]); maxX = Math.max(maxX, xy[i]);
+                minY = Math.min(minY, xy[i+1]); maxY = Math.max(maxY, xy[i+1]);
+            }
+            int pad = style().size / 2 + 1;
+            Rectangle b = new Rectangle(minX - pad, minY - pad, maxX - minX + 2 * pad, maxY - minY + 2 * pad);
+            bounds = b;
+            return new Rectangle(b);
+        }
+
+        // legacy .cvs files store pen strokes as chains of LineShapes (b of one == a of the next)
+        static List<DrawingShape> mergeLineChains(List<DrawingShape> in) {
+            List<DrawingShape> out = new ArrayList<>(in.size());
+            int i = 0;
+            while (i < in.size()) {
+                DrawingShape s = in.get(i);
+                int j = i + 1;
+                if (s instanceof LineShape first) {
+                    LineShape prev = first;
+                    while (j < in.size() && in.get(j) instanceof LineShape next
+                            && next.a.equals(prev.b) && next.style == first.style) {
+                        prev = next;
+                        j++;
+                    }
+                    if (j - i >= 2) {
+                        StrokeShape st = new StrokeShape(new Point(first.a), first.style);
+                        for (int k = i; k < j; k++) st.add(((LineShape) in.get(k)).b);
+                        st.trim();
+                        out.add(st);
+                        i = j;
+                        continue;
+                    }
+                }
+                out.add(s);
+                i++;
+            }
+            return out;
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField f = in.readFields();
+            xy = (int[]) f.get("xy", null); n = f.get("n", 0);
+            style = readStrokeStyle(f, true);
+        }
     }
 
-    static class RectShape implements DrawingShape, Serializable {
+    static class RectShape implements MovableShape, Serializable {
         private static final long serialVersionUID = 1L;
-        Point a, b; Color color; int size;
-        RectShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.color=c; this.size=s; }
+        Point a, b; int style;
+        transient volatile Rectangle bounds;
+        RectShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.style=StyleTable.stroke(c, s, false); }
+        RectShape(Point a, Point b, int style) { this.a=a; this.b=b; this.style=style; }
+        StyleTable.Style style() { return StyleTable.get(style); }
+        @Override public int styleId() { return style; }
+        @Override public void setStyleId(int id) { style = id; bounds = null; }
+        @Override public void translate(int dx, int dy) { a.translate(dx, dy); b.translate(dx, dy); bounds = null; }
         @Override public void draw(Graphics2D g) {
+            StyleTable.Style st = style();
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.setColor(color);
-            g.setStroke(new BasicStroke(size));
+            g.setColor(st.color());
+            g.setStroke(st.stroke());
             g.drawRect(Math.min(a.x,b.x), Math.min(a.y,b.y), Math.abs(a.x-b.x), Math.abs(a.y-b.y));
         }
+        // mitered corners reach past size/2
+        @Override public Rectangle getBounds() {
+            Rectangle c = bounds;
+            if (c == null) bounds = c = strokeBounds(a, b, style().size + 1);
+            return new Rectangle(c);
+        }
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField f = in.readFields();
+            a = (Point) f.get("a", null); b = (Point) f.get("b", null);
+            style = readStrokeStyle(f, false);
+        }
     }
 
-    static class OvalShape implements DrawingShape, Serializable {
+    static class OvalShape implements MovableShape, Serializable {
         private static final long serialVersionUID = 1L;
-        Point a, b; Color color; int size;
-        OvalShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.color=c; this.size=s; }
+        Point a, b; int style;
+        transient volatile Rectangle bounds;
+        transient volatile Path2D.Float[] flat; // flattened outline per zoom band, see flatPath
+        OvalShape(Point a, Point b, Color c, int s) { this.a=a; this.b=b; this.style=StyleTable.stroke(c, s, false); }
+        OvalShape(Point a, Point b, int style) { this.a=a; this.b=b; this.style=style; }
+        StyleTable.Style style() { return StyleTable.get(style); }
+        @Override public int styleId() { return style; }
+        @Override public void setStyleId(int id) { style = id; bounds = null; }
+        @Override public void translate(int dx, int dy) { a.translate(dx, dy); b.translate(dx, dy); bounds = null; flat = null; }
         @Override public void draw(Graphics2D g) {
+            StyleTable.Style st = style();
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.setColor(color);
-            g.setStroke(new BasicStroke(size));
-            g.drawOval(Math.min(a.x,b.x), Math.min(a.y,b.y), Math.abs(a.x-b.x), Math.abs(a.y-b.y));
+            g.setColor(st.color());
+            g.setStroke(st.stroke());
+            Path2D.Float p = flatPath(Math.abs(g.getTransform().getScaleX()));
+            // pure: normalization would snap every vertex of the flattened ellipse and make it look faceted
+            Object stroke = g.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.draw(p);
+            if (stroke != null) g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, stroke);
+        }
+        // flattened here rather than by the rasterizer (which clips curves per tile),
+        // so tiles and parallel exports match a single full render pixel for pixel;
+        // one path per power-of-two band of px, at most a quarter device pixel off
+        Path2D.Float flatPath(double px) {
+            int band = (int) Math.ceil(Math.log(Math.max(1e-3, px)) / Math.log(2));
+            band = Math.max(-LOD_BANDS, Math.min(OVAL_ZOOM_BANDS, band));
+            Path2D.Float[] l = flat;
+            Path2D.Float p = (l == null) ? null : l[band + LOD_BANDS];
+            if (p == null) {
+                Ellipse2D e = new Ellipse2D.Float(Math.min(a.x,b.x), Math.min(a.y,b.y), Math.abs(a.x-b.x), Math.abs(a.y-b.y));
+                p = new Path2D.Float();
+                p.append(e.getPathIterator(null, 0.25 / Math.scalb(1.0, band)), false);
+                // publish a fresh array so concurrent renderers never see a half-built path
+                Path2D.Float[] next = (l == null) ? new Path2D.Float[LOD_BANDS + OVAL_ZOOM_BANDS + 1] : l.clone();
+                next[band + LOD_BANDS] = p;
+                flat = next;
+            }
+            return p;
+        }
+        @Override public Rectangle getBounds() {
+            Rectangle c = bounds;
+            if (c == null) bounds = c = strokeBounds(a, b, style().size / 2 + 1);
+            return new Rectangle(c);
+        }
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField f = in.readFields();
+            a = (Point) f.get("a", null); b = (Point) f.get("b", null);
+            style = readStrokeStyle(f, false);
         }
     }
 
-    static class TextShape implements DrawingShape, Serializable {
+    static class TextShape implements MovableShape, Serializable {
     private static final long serialVersionUID = 1L;
-    String text; Point pos; Color color; Font font;
-    TextShape(String t, Point p, Color c, Font f) { this.text=t; this.pos=p; this.color=c; this.font=f; }
-    @Override public void draw(Graphics2D g) {
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g.setColor(color);
-        g.setFont(font);
-        FontMetrics fm = g.getFontMetrics(font);
-        int lineHeight = fm.getHeight();
+    String text; Point pos; int style;   // text/style only change via constructor and setStyleId
+    TextShape(String t, Point p, Color c, Font f) { this.text=t; this.pos=p; this.style=StyleTable.text(c, f); }
+    TextShape(String t, Point p, int style) { this.text=t; this.pos=p; this.style=style; }
+
+    // shaped lines relative to pos, built once per text/style (drawing then only blits glyphs)
+    private record Layout(java.awt.font.GlyphVector[] lines, int lineHeight, Rectangle box, Rectangle paint) {}
+    private transient volatile Layout layout;
+
+    StyleTable.Style style() { return StyleTable.get(style); }
+    Font font() { return style().font(); }
+    @Override public int styleId() { return style; }
+    @Override public void setStyleId(int id) { style = id; layout = null; }
+    @Override public void translate(int dx, int dy) { pos.translate(dx, dy); }   // layout is relative to pos
+
+    private Layout layout() {
+        Layout l = layout;
+        if (l != null) return l;
+        Font font = font();
         String[] lines = (text == null) ? new String[] { "" } : text.split("\n", -1);
-        int y = pos.y;
-        for (String line : lines) {
-            g.drawString(line, pos.x, y);
-            y += lineHeight;
+        java.awt.font.LineMetrics lm = font.getLineMetrics("Ag", TEXT_FRC);
+        int ascent = (int) Math.ceil(lm.getAscent());
+        int lineHeight = (int) Math.ceil(lm.getAscent() + lm.getDescent() + lm.getLeading());
+        java.awt.font.GlyphVector[] gvs = new java.awt.font.GlyphVector[lines.length];
+        double w = 0;
+        Rectangle2D ink = null;
+        for (int i = 0; i < lines.length; i++) {
+            char[] cs = lines[i].toCharArray();
+            gvs[i] = font.layoutGlyphVector(TEXT_FRC, cs, 0, cs.length, Font.LAYOUT_LEFT_TO_RIGHT);
+            w = Math.max(w, gvs[i].getLogicalBounds().getWidth());
+            Rectangle2D vb = gvs[i].getVisualBounds();
+            if (vb.isEmpty()) continue;
+            vb.setRect(vb.getX(), vb.getY() + i * lineHeight, vb.getWidth(), vb.getHeight());
+            if (ink == null) ink = vb; else ink.add(vb);
         }
+        // logical box for selection/hit tests; paint box also covers overhangs (italics, accents)
+        Rectangle box = new Rectangle(-1, -ascent - 1, (int) Math.ceil(w) + 2, lineHeight * lines.length + 2);
+        Rectangle paint = new Rectangle(box);
+        if (ink != null) paint.add(ink.getBounds());
+        paint.grow(2, 2);   // antialiasing / hinting bleed
+        layout = l = new Layout(gvs, lineHeight, box, paint);
+        return l;
+    }
+
+    @Override public void draw(Graphics2D g) {
+        Layout l = layout();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(style().color());
+        for (int i = 0; i < l.lines.length; i++) g.drawGlyphVector(l.lines[i], pos.x, pos.y + i * l.lineHeight);
+    }
+
+    // text box in world space, measured with the shape's own font (not the canvas' current text settings)
+    Rectangle textBox() {
+        Rectangle b = new Rectangle(layout().box);
+        b.translate(pos.x, pos.y);
+        return b;
+    }
+
+    boolean textContains(int px, int py) {
+        Rectangle box = layout().box;
+        int rx = px - pos.x, ry = py - pos.y;
+        return rx >= box.x && ry >= box.y && rx < box.x + box.width && ry < box.y + box.height;
+    }
+
+    @Override public Rectangle getBounds() {
+        Rectangle b = new Rectangle(layout().paint);
+        b.translate(pos.x, pos.y);
+        return b;
+    }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        text = (String) f.get("text", null); pos = (Point) f.get("pos", null);
+        style = readTextStyle(f);
     }
 }
 
-    // ===== soft shadow helper (simple, high-quality look without heavy blur ops)
-        // ...existing code...
-        // ===== soft shadow helper (omnidirectional, inexpensive approximation)
+    // ===== soft shadow helper (omnidirectional, cached mask - see SoftShadow)
         private static void paintSoftShadow(Graphics2D g2, Shape s, int blurRadius, float baseAlpha) {
-            if (blurRadius <= 0) return;
-    
-            // save state
-            AffineTransform oldT = g2.getTransform();
-            Composite oldC = g2.getComposite();
-            Object oldHint = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
-    
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    
-            // step size controls how dense the "blur" offsets are (1 = pixel offsets)
-            double step = 1.0;
-    
-            // iterate layers from outer to inner
-            for (int layer = blurRadius; layer >= 1; layer--) {
-                // iterate offsets in a square but only draw those within the radius -> creates circular/omnidirectional spread
-                for (int dx = -layer; dx <= layer; dx++) {
-                    for (int dy = -layer; dy <= layer; dy++) {
-                        double dist = Math.hypot(dx, dy);
-                        if (dist > layer) continue; // keep circular shape
-    
-                        // alpha falls off with distance (closer = stronger)
-                        float alpha = baseAlpha * (float) (1.0 - (dist / (blurRadius + 0.5)));
-                        alpha = Math.max(0f, Math.min(1f, alpha));
-    
-                        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-    
-                        // translate by dx,dy * step
-                        AffineTransform t = AffineTransform.getTranslateInstance(dx * step, dy * step);
-                        g2.transform(t);
-                        g2.fill(s);
-                        g2.setTransform(oldT);
-                    }
-                }
-            }
-    
-            // small subtle center fill to smooth center
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, Math.max(0f, Math.min(1f, baseAlpha * 0.35f))));
-            g2.fill(s);
-    
-            // restore
-            g2.setTransform(oldT);
-            g2.setComposite(oldC);
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, oldHint);
+            SoftShadow.paint(g2, s, blurRadius, baseAlpha);
         }
+
+    // ===== chrome states (cached as nine-patches, see ChromeCache)
+    static final Color PRESSED_TINT = new Color(60,120,255,28);
+
+    static String chromeState(AbstractButton b, boolean hover) {
+        ButtonModel m = b.getModel();
+        if (m.isPressed() && m.isArmed()) return "pressed";
+        if (m.isSelected()) return "selected";
+        return hover ? "hover" : "normal";
+    }
+
+    // pill with arc = height: only the width is stretchable; corner = inset + arc/2 + shadow + AA
+    static void paintPillChrome(Graphics2D g2, String kind, String state, int w, int h, Color fill, Color ring) {
+        ChromeCache.paint(g2, kind + ":" + state, 0, 0, w, h, h / 2 + 5, h, (g, cw, ch) -> {
+            Shape pill = new RoundRectangle2D.Double(2, 2, Math.max(0, cw - 4), Math.max(0, ch - 4), ch, ch);
+            paintSoftShadow(g, pill, 2, 0.05f);
+            g.setColor(fill);
+            g.fill(pill);
+            if (state.equals("pressed")) {
+                g.setColor(PRESSED_TINT);
+                g.fill(pill);
+            }
+            if (!state.equals("normal")) {
+                g.setStroke(new BasicStroke(2f));
+                g.setColor(ring);
+                g.draw(pill);
+            }
+        });
+    }
     // ...existing code...
 
     // ===== ProjectData for persistence
@@ -141,6 +513,10 @@ public class canvasex extends JFrame {
         int fontSize;
         String fontFamily;
         int fontStyle;
+        // style table, written once per project; shapes only carry ids into it (null in old files)
+        List<StyleTable.Style> styles;
+        // journal generation this file is a checkpoint of (ProjectFormat META; 0 = none)
+        transient long journalGen;
 
         ProjectData(List<DrawingShape> shapes, double scale, double offX, double offY,
                     int penSize, Color drawColor, Color textColor,
@@ -153,13 +529,29 @@ public class canvasex extends JFrame {
             this.fontSize = fontSize;
             this.fontFamily = fontFamily;
             this.fontStyle = fontStyle;
+            this.styles = StyleTable.snapshot();
+        }
+
+        // map the saved style ids onto this process' table
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            if (styles == null) return; // legacy file: shapes interned their own colours while reading
+            int[] map = StyleTable.importStyles(styles);
+            for (DrawingShape s : shapes) {
+                if (s.styleId() >= 0) s.setStyleId(map[s.styleId()]);
+            }
         }
     }
 
     // ...existing code...
 static class CanvasView extends JComponent {
-    // Daten
-    List<DrawingShape> shapes = new ArrayList<>();
+    // Daten (shapes = paint order, index = spatial lookup; keep both in sync via addShape/removeShape/...)
+    final ShapeList shapes = new ShapeList();
+    final SpatialIndex<DrawingShape> index = new SpatialIndex<>();
+
+    // rasterized committed shapes, per zoom bucket (see TileCache)
+    final TileCache tileCache = new TileCache(128L << 20);
+    boolean tileCacheEnabled = true;
 
     // View-Transform
     double scale = 1.0;
@@ -167,6 +559,7 @@ static class CanvasView extends JComponent {
 
     // Interaktion
     Point lastWorld = null;
+    StrokeShape liveStroke = null;   // pen stroke being drawn (committed on release)
     Point dragStartWorld = null;
     Point dragNowWorld = null;
     boolean panning = false;
@@ -192,7 +585,7 @@ static class CanvasView extends JComponent {
     int selStart = -1, selEnd = -1;      // selection indices (selStart==selEnd => no selection)
 
     // NEU: Auswahl und Drag für Shapes/Text
-    DrawingShape selectedShape = null;
+    MovableShape selectedShape = null;
     Point dragOffset = null;
 
     // NEU: Bild-Resize state
@@ -203,6 +596,58 @@ static class CanvasView extends JComponent {
     // NEU: only allow selection/move/resize when this is enabled via the "move" button
     public boolean editingEnabled = false;
 
+    // world-space search radius for click selection (covers line hit tolerance at max pen size)
+    static final int HIT_SLOP = 40;
+
+    // Dirty regions: interactions repaint only what they touched
+    boolean showDirtyRegions = false;   // F8 toggles an outline of every repainted clip
+    // F9: performance HUD (PerfStats), refreshed on a timer even when nothing else repaints
+    private boolean showPerfHud = false;
+    private Rectangle perfHudBounds;
+    private final Timer perfHudTimer = new Timer(250, e -> { if (perfHudBounds != null) repaint(perfHudBounds); });
+    private int dirtyFlash = 0;
+    // Ctrl+Shift+R: input recording (InputRecorder); replay = headless InputReplay driving this view
+    InputRecorder recorder;
+    InputReplay.Session replay;
+    int docVersion;   // bumped by every shape list / geometry change (addShape, removeShape, ...)
+    // background autosave still reading the document (see willChange)
+    Autosave.Snapshot saving;
+    // edit log between autosaves (attached once the startup restore is done)
+    Journal journal;
+    // sections in shapes (mapped from the project file or paged out, see ShapeSection); 0 for
+    // documents that were read and fit in memory
+    int lazySections;
+    // far parts of a large document, kept on disk (startPaging)
+    ChunkStore chunks;
+    private Timer pager;
+    // the image listeners are static: registered only while the view is showing (listenForImages)
+    private final Consumer<BufferedImage> mipListener = src -> SwingUtilities.invokeLater(() -> imageChanged(src));
+    private final Consumer<ImageShape> readyListener = is -> SwingUtilities.invokeLater(() -> imageReady(is));
+    private boolean listening;
+    private Rectangle lastEditorBounds = null;
+
+    // committed-content layer + the view it was rendered for (see paintCommittedLayer)
+    boolean layerEnabled = true;
+    private BufferedImage committedLayer;
+    private Rectangle layerDirty;          // layer pixels to re-render, null = clean
+    private double layerScale, layerOffX, layerOffY, layerDevScale;
+
+    // startup: picture of the last autosave, shown until the document itself is loaded
+    private AutosaveSnapshot.Snapshot preview;
+    private boolean painted;
+
+    // caret blink: only the editor region is repainted
+    private boolean caretVisible = true;
+    private final Timer caretTimer = new Timer(530, e -> blinkCaret());
+    static final int SELECTION_PAD = 8;  // selection frame + image handles
+
+    // overlay paints (shared, not re-allocated per frame)
+    static final Color SELECTION_COLOR = new Color(60,120,255,120);
+    static final Color HANDLE_COLOR = new Color(60,120,255,200);
+    static final Color TEXT_SELECTION_COLOR = new Color(60,120,255,80);
+    static final BasicStroke SELECTION_STROKE = new BasicStroke(2f);
+    static final BasicStroke THIN_STROKE = new BasicStroke(1f);
+
     CanvasView() {
         setOpaque(true);
         setBackground(Color.WHITE);
@@ -210,9 +655,9 @@ static class CanvasView extends JComponent {
 
         addMouseWheelListener(this::onWheel);
 
-        // Drag & Drop für Dateien (PNG/JPEG) - unchanged
+        // Drag & Drop für Dateien (PNG/JPEG) - unchanged; no drop target headless (benchmarks)
         try {
-            new java.awt.dnd.DropTarget(this, java.awt.dnd.DnDConstants.ACTION_COPY,
+            if (!GraphicsEnvironment.isHeadless()) new java.awt.dnd.DropTarget(this, java.awt.dnd.DnDConstants.ACTION_COPY,
                 new java.awt.dnd.DropTargetAdapter() {
                     @Override public void drop(java.awt.dnd.DropTargetDropEvent dtde) {
                         try {
@@ -223,17 +668,18 @@ static class CanvasView extends JComponent {
                                 java.util.List<File> files = (java.util.List<File>) tr.getTransferData(java.awt.datatransfer.DataFlavor.javaFileListFlavor);
                                 for (File f : files) {
                                     try {
-                                        BufferedImage img = ImageIO.read(f);
-                                        if (img != null) {
+                                        // only the header is read here; bytes + decoding happen off the EDT
+                                        Dimension size = ImageShape.readSize(f);
+                                        if (size != null) {
                                             Point dropPt = dtde.getLocation();
                                             Point world = toWorld(dropPt);
-                                            int iw = img.getWidth(), ih = img.getHeight();
+                                            int iw = size.width, ih = size.height;
                                             int max = 300;
                                             double scaleFactor = Math.min(1.0, Math.min((double)max/iw, (double)max/ih));
                                             int w = Math.max(32, (int)(iw * scaleFactor));
                                             int h = Math.max(32, (int)(ih * scaleFactor));
-                                            ImageShape is = new ImageShape(img, world.x - w/2, world.y - h/2, w, h);
-                                            shapes.add(is);
+                                            ImageShape is = ImageShape.fromFile(f, world.x - w/2, world.y - h/2, w, h);
+                                            addShape(is);
                                             selectedShape = is;
                                         }
                                     } catch (Exception ex) {
@@ -275,7 +721,7 @@ static class CanvasView extends JComponent {
                         // Click inside editing area -> update caret position according to click
                         caretPos = caretIndexFromClick(textBuffer.toString(), textStartWorld, w);
                         clearSelection();
-                        repaint();
+                        repaintEditor();
                         return;
                     }
                 }
@@ -283,38 +729,38 @@ static class CanvasView extends JComponent {
                 // selection (only when editingEnabled / move-mode)
                 selectedShape = null;
                 if (editingEnabled) {
-                    for (int i = shapes.size() - 1; i >= 0; i--) {
-                        DrawingShape s = shapes.get(i);
-                        if (shapeContains(s, w)) {
-                            selectedShape = s;
-                            if (s instanceof LineShape l) {
-                                dragOffset = new Point(w.x - l.a.x, w.y - l.a.y);
-                            } else if (s instanceof RectShape r) {
-                                dragOffset = new Point(w.x - r.a.x, w.y - r.a.y);
-                            } else if (s instanceof OvalShape o) {
-                                dragOffset = new Point(w.x - o.a.x, w.y - o.a.y);
-                            } else if (s instanceof TextShape t) {
-                                dragOffset = new Point(w.x - t.pos.x, w.y - t.pos.y);
-                                // double-click enters edit mode
-                                if (e.getClickCount() == 2) {
-                                    startEditingTextShape(t, w);
-                                    return;
-                                }
-                            } else if (s instanceof ImageShape im) {
-                                Rectangle bounds = im.getBounds();
-                                int handle = getHandleIndex(im, w);
-                                if (handle >= 0) {
-                                    resizing = true;
-                                    activeHandle = handle;
-                                    initialBounds = new Rectangle(bounds);
-                                    return;
-                                } else {
-                                    dragOffset = new Point(w.x - bounds.x, w.y - bounds.y);
-                                }
+                    MovableShape s = shapeAt(w);
+                    if (s != null) {
+                        selectedShape = s;
+                        if (s instanceof LineShape l) {
+                            dragOffset = new Point(w.x - l.a.x, w.y - l.a.y);
+                        } else if (s instanceof StrokeShape st) {
+                            dragOffset = new Point(w.x - st.xy[0], w.y - st.xy[1]);
+                        } else if (s instanceof RectShape r) {
+                            dragOffset = new Point(w.x - r.a.x, w.y - r.a.y);
+                        } else if (s instanceof OvalShape o) {
+                            dragOffset = new Point(w.x - o.a.x, w.y - o.a.y);
+                        } else if (s instanceof TextShape t) {
+                            dragOffset = new Point(w.x - t.pos.x, w.y - t.pos.y);
+                            // double-click enters edit mode
+                            if (e.getClickCount() == 2) {
+                                startEditingTextShape(t, w);
+                                return;
+                            }
+                        } else if (s instanceof ImageShape im) {
+                            Rectangle bounds = im.getBounds();
+                            int handle = getHandleIndex(im, w);
+                            if (handle >= 0) {
+                                resizing = true;
+                                activeHandle = handle;
+                                initialBounds = new Rectangle(bounds);
+                                return;
+                            } else {
+                                dragOffset = new Point(w.x - bounds.x, w.y - bounds.y);
                             }
-                            repaint();
-                            return;
                         }
+                        repaint();
+                        return;
                     }
                 }
 
@@ -325,7 +771,7 @@ static class CanvasView extends JComponent {
                     textBuffer.setLength(0);
                     caretPos = 0;
                     clearSelection();
-                    repaint();
+                    repaintEditor();
                     return;
                 }
 
@@ -333,6 +779,7 @@ static class CanvasView extends JComponent {
                 if (!editingEnabled) {
                     dragStartWorld = w;
                     lastWorld = w;
+                    if (mode == Mode.PEN) liveStroke = new StrokeShape(w, color, penSize);
                 } else {
                     dragStartWorld = null;
                     lastWorld = null;
@@ -352,6 +799,14 @@ static class CanvasView extends JComponent {
                     dragOffset = null;
                     return;
                 }
+                if (liveStroke != null) {
+                    // a click without dragging leaves no mark (as before)
+                    if (liveStroke.n >= 2) {
+                        liveStroke.trim();
+                        addShape(liveStroke);
+                    }
+                    liveStroke = null;
+                }
                 if (dragStartWorld == null) return;
                 Point w = toWorld(e.getPoint());
                 if (!editingEnabled) commitShape(dragStartWorld, w);
@@ -373,36 +828,25 @@ static class CanvasView extends JComponent {
                 Point w = toWorld(e.getPoint());
                 // Drag selection (only when editingEnabled)
                 if (editingEnabled && selectedShape != null && dragOffset != null && !resizing) {
-                    if (selectedShape instanceof LineShape l) {
-                        int dx = w.x - dragOffset.x - l.a.x;
-                        int dy = w.y - dragOffset.y - l.a.y;
-                        l.a.translate(dx, dy);
-                        l.b.translate(dx, dy);
-                    } else if (selectedShape instanceof RectShape r) {
-                        int dx = w.x - dragOffset.x - r.a.x;
-                        int dy = w.y - dragOffset.y - r.a.y;
-                        r.a.translate(dx, dy);
-                        r.b.translate(dx, dy);
-                    } else if (selectedShape instanceof OvalShape o) {
-                        int dx = w.x - dragOffset.x - o.a.x;
-                        int dy = w.y - dragOffset.y - o.a.y;
-                        o.a.translate(dx, dy);
-                        o.b.translate(dx, dy);
-                    } else if (selectedShape instanceof TextShape t) {
-                        t.pos.x = w.x - dragOffset.x;
-                        t.pos.y = w.y - dragOffset.y;
-                    } else if (selectedShape instanceof ImageShape im) {
-                        Rectangle b = im.getBounds();
-                        b.x = w.x - dragOffset.x;
-                        b.y = w.y - dragOffset.y;
-                        im.setBounds(b);
-                    }
-                    repaint();
+                    Rectangle before = selectionBounds(selectedShape);
+                    // dragOffset is relative to each shape's anchor point (see mousePressed)
+                    int ax = 0, ay = 0;
+                    if (selectedShape instanceof LineShape l) { ax = l.a.x; ay = l.a.y; }
+                    else if (selectedShape instanceof RectShape r) { ax = r.a.x; ay = r.a.y; }
+                    else if (selectedShape instanceof OvalShape o) { ax = o.a.x; ay = o.a.y; }
+                    else if (selectedShape instanceof StrokeShape st) { ax = st.xy[0]; ay = st.xy[1]; }
+                    else if (selectedShape instanceof TextShape t) { ax = t.pos.x; ay = t.pos.y; }
+                    else if (selectedShape instanceof ImageShape im) { ax = im.x; ay = im.y; }
+                    willChange(selectedShape);
+                    selectedShape.translate(w.x - dragOffset.x - ax, w.y - dragOffset.y - ay);
+                    shapeMoved(selectedShape);
+                    repaintWorld(before, selectionBounds(selectedShape));
                     return;
                 }
 
                 // Resizing image (only when editingEnabled)
                 if (editingEnabled && resizing && selectedShape instanceof ImageShape im && initialBounds != null) {
+                    Rectangle before = selectionBounds(im);
                     Rectangle nb = new Rectangle(initialBounds);
                     switch (activeHandle) {
                         case 0 -> { // NW
@@ -436,20 +880,23 @@ static class CanvasView extends JComponent {
                     }
                     nb.width = Math.max(16, nb.width);
                     nb.height = Math.max(16, nb.height);
+                    willChange(im);
                     im.setBounds(nb);
-                    repaint();
+                    shapeMoved(im);
+                    repaintWorld(before, selectionBounds(im));
                     return;
                 }
 
                 // Drawing preview (only if editing disabled)
                 if (!editingEnabled) {
-                    if (mode == Mode.PEN && lastWorld != null) {
-                        shapes.add(new LineShape(lastWorld, w, color, penSize));
+                    if (mode == Mode.PEN && liveStroke != null) {
+                        liveStroke.add(w);
                         lastWorld = w;
-                        repaint();
+                        repaintWorld(liveStroke.segmentBounds(liveStroke.n - 1));
                     } else {
+                        Rectangle before = previewBounds();
                         dragNowWorld = w; // Vorschau
-                        repaint();
+                        repaintWorld(before, previewBounds());
                     }
                 }
             }
@@ -490,7 +937,7 @@ static class CanvasView extends JComponent {
                     if (isCtrl(e) && e.getKeyCode() == KeyEvent.VK_A) {
                         selStart = 0; selEnd = textBuffer.length();
                         caretPos = selEnd;
-                        repaint();
+                        repaintEditor();
                         return;
                     }
                     // Arrow keys navigation
@@ -504,7 +951,7 @@ static class CanvasView extends JComponent {
                                 if (caretPos > 0) caretPos--;
                                 clearSelection();
                             }
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                         case KeyEvent.VK_RIGHT -> {
@@ -515,19 +962,19 @@ static class CanvasView extends JComponent {
                                 if (caretPos < textBuffer.length()) caretPos++;
                                 clearSelection();
                             }
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                         case KeyEvent.VK_UP -> {
                             moveCaretUpDown(-1);
                             clearSelection();
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                         case KeyEvent.VK_DOWN -> {
                             moveCaretUpDown(1);
                             clearSelection();
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                         case KeyEvent.VK_BACK_SPACE -> {
@@ -537,7 +984,7 @@ static class CanvasView extends JComponent {
                                 textBuffer.deleteCharAt(caretPos - 1);
                                 caretPos--;
                             }
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                         case KeyEvent.VK_DELETE -> {
@@ -546,22 +993,127 @@ static class CanvasView extends JComponent {
                             } else if (caretPos < textBuffer.length()) {
                                 textBuffer.deleteCharAt(caretPos);
                             }
-                            repaint();
+                            repaintEditor();
                             return;
                         }
                     }
                 } else {
                     // Not typing: global shortcuts (e.g., delete to remove selected shape allowed only when editingEnabled)
                     if (e.getKeyCode() == KeyEvent.VK_DELETE && selectedShape != null && editingEnabled) {
-                        shapes.remove(selectedShape);
+                        Rectangle gone = selectionBounds(selectedShape);
+                        removeShape(selectedShape);
                         selectedShape = null;
+                        repaintWorld(gone);
+                    }
+                    // Ctrl+0: zoom to fit the whole document
+                    if (isCtrl(e) && e.getKeyCode() == KeyEvent.VK_0) {
+                        zoomToFit();
+                    }
+                    // F8: outline repainted regions (debug)
+                    if (e.getKeyCode() == KeyEvent.VK_F8) {
+                        showDirtyRegions = !showDirtyRegions;
                         repaint();
                     }
+                    // F9: performance HUD, Shift+F9: dump the frame log as CSV
+                    if (e.getKeyCode() == KeyEvent.VK_F9) {
+                        if (e.isShiftDown()) dumpPerfCsv(); else togglePerfHud();
+                    }
+                    // Ctrl+Shift+R: start / stop recording the input (InputReplay plays it back)
+                    if (isCtrl(e) && e.isShiftDown() && e.getKeyCode() == KeyEvent.VK_R) {
+                        toggleRecording();
+                    }
                 }
             }
         });
     }
 
+    void togglePerfHud() {
+        showPerfHud = !showPerfHud;
+        PerfStats.setEnabled(showPerfHud || Boolean.getBoolean("freeplay.perf"));
+        if (showPerfHud) perfHudTimer.start(); else perfHudTimer.stop();
+        perfHudBounds = null;
+        repaint();
+    }
+
+    void dumpPerfCsv() {
+        try {
+            File f = PerfStats.dumpCsv(new File(System.getProperty("user.home")));
+            System.err.println("perf log written to " + f.getAbsolutePath());
+        } catch (IOException ex) {
+            System.err.println("Error writing perf log: " + ex.getMessage());
+        }
+        if (perfHudBounds != null) repaint(perfHudBounds);
+    }
+
+    void toggleRecording() {
+        if (recorder != null) {
+            stopRecording();
+            return;
+        }
+        File f = new File(System.getProperty("user.home"),
+                "freeplay-input-" + new java.text.SimpleDateFormat("yyyyMMdd-HHmmss").format(new java.util.Date()) + ".fpr");
+        try {
+            recorder = new InputRecorder(this, f);
+            System.err.println("recording input to " + f.getAbsolutePath());
+        } catch (IOException ex) {
+            System.err.println("Error starting input recording: " + ex.getMessage());
+        }
+    }
+
+    void stopRecording() {
+        InputRecorder r = recorder;
+        if (r == null) return;
+        recorder = null;
+        try {
+            r.close();
+            System.err.println("input recording stopped: " + r.events() + " events in " + r.file().getAbsolutePath());
+        } catch (IOException ex) {
+            System.err.println("Error writing input recording: " + ex.getMessage());
+        }
+    }
+
+    // input timing + recording (all listeners and key bindings run inside these; InputReplay calls them directly)
+    @Override protected void processMouseEvent(MouseEvent e) {
+        long t0 = inputStart(e);
+        super.processMouseEvent(e);
+        inputEnd(t0);
+    }
+
+    @Override protected void processMouseMotionEvent(MouseEvent e) {
+        long t0 = inputStart(e);
+        super.processMouseMotionEvent(e);
+        inputEnd(t0);
+    }
+
+    @Override protected void processMouseWheelEvent(MouseWheelEvent e) {
+        long t0 = inputStart(e);
+        super.processMouseWheelEvent(e);
+        inputEnd(t0);
+    }
+
+    @Override protected void processKeyEvent(KeyEvent e) {
+        long t0 = inputStart(e);
+        super.processKeyEvent(e);
+        inputEnd(t0);
+    }
+
+    private long inputStart(AWTEvent e) {
+        if (recorder != null) recorder.before(e);
+        return PerfStats.inputStart();
+    }
+
+    private void inputEnd(long t0) {
+        PerfStats.inputEnd(t0);
+        if (recorder != null) recorder.after();
+    }
+
+    // every repaint(...) / repaint(Rectangle) ends up here
+    @Override public void repaint(long tm, int x, int y, int width, int height) {
+        PerfStats.repaintRequested();
+        if (replay != null) replay.repaint(x, y, width, height);
+        super.repaint(tm, x, y, width, height);
+    }
+
     // helper to check control pressed (works for CTRL both left and right)
     private boolean isCtrl(KeyEvent e) {
         return (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0;
@@ -578,7 +1130,7 @@ static class CanvasView extends JComponent {
             textBuffer.insert(caretPos, s);
             caretPos += s.length();
         }
-        repaint();
+        repaintEditor();
     }
 
     private void deleteSelection() {
@@ -605,16 +1157,21 @@ static class CanvasView extends JComponent {
         } else {
             toCopy = ""; // nothing to copy
         }
+        if (replay != null) { replay.clipboard = toCopy; return; }
         StringSelection ss = new StringSelection(toCopy);
         Toolkit.getDefaultToolkit().getSystemClipboard().setContents(ss, null);
     }
 
     private void pasteClipboard() {
         try {
+            if (replay != null) { insertText(replay.clipboard); return; }
             java.awt.datatransfer.Transferable t = Toolkit.getDefaultToolkit().getSystemClipboard().getContents(null);
             if (t != null && t.isDataFlavorSupported(java.awt.datatransfer.DataFlavor.stringFlavor)) {
                 String txt = (String) t.getTransferData(java.awt.datatransfer.DataFlavor.stringFlavor);
-                if (txt != null) insertText(txt);
+                if (txt != null) {
+                    if (recorder != null) recorder.clipboard(txt);
+                    insertText(txt);
+                }
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -660,14 +1217,14 @@ static class CanvasView extends JComponent {
         caretPos = caretIndexFromClick(t.text, t.pos, clickWorld);
         clearSelection();
         // remove the old shape - we will re-create on commit
-        shapes.remove(t);
+        removeShape(t);
         selectedShape = null;
         repaint();
     }
 
     // compute caret index from click position relative to origin
     private int caretIndexFromClick(String text, Point origin, Point clickWorld) {
-        Font f = new Font(fontFamily, fontStyle, fontSize);
+        Font f = StyleTable.font(fontFamily, fontStyle, fontSize);
         FontMetrics fm = getFontMetrics(f);
         int lineHeight = fm.getHeight();
         int relY = clickWorld.y - origin.y;
@@ -696,14 +1253,15 @@ static class CanvasView extends JComponent {
         if (!typing || textStartWorld == null) return;
         String text = textBuffer.toString();
         if (!text.isEmpty()) {
-            Font f = new Font(fontFamily, fontStyle, fontSize);
-            shapes.add(new TextShape(text, new Point(textStartWorld), textColor, f));
+            Font f = StyleTable.font(fontFamily, fontStyle, fontSize);
+            addShape(new TextShape(text, new Point(textStartWorld), textColor, f));
         }
         typing = false;
         textStartWorld = null;
         textBuffer.setLength(0);
         caretPos = 0;
         clearSelection();
+        lastEditorBounds = null;
         repaint();
     }
 
@@ -734,11 +1292,45 @@ static class CanvasView extends JComponent {
         offY = p.y - (p.y - offY) * (scale / prev);
         repaint();
     }
+    // Zoom to fit: whole document (index extent) centred in the view with a small margin
+    void zoomToFit() {
+        Rectangle ext = index.extent();
+        if (ext == null || getWidth() <= 0 || getHeight() <= 0) return;
+        double margin = 0.9;
+        double s = Math.min(getWidth() / (double) Math.max(1, ext.width), getHeight() / (double) Math.max(1, ext.height)) * margin;
+        scale = Math.max(0.1, Math.min(10.0, s));
+        offX = getWidth() / 2.0 - (ext.x + ext.width / 2.0) * scale;
+        offY = getHeight() / 2.0 - (ext.y + ext.height / 2.0) * scale;
+        repaint();
+    }
+
+    // also takes over the snapshot's view, so the picture appears where it was taken
+    void showPreview(AutosaveSnapshot.Snapshot s) {
+        preview = s;
+        scale = s.scale(); offX = s.offX(); offY = s.offY();
+        repaint();
+    }
+
+    void dropPreview() {
+        if (preview == null) return;
+        preview = null;
+        repaint();
+    }
+
+    // committed content of the view at device resolution, transparent background (autosave snapshot)
+    AutosaveSnapshot.Snapshot snapshot() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        double ds = gc != null ? gc.getDefaultTransform().getScaleX() : 1.0;
+        AffineTransform at = AffineTransform.getScaleInstance(ds, ds);
+        at.concatenate(viewTransform());
+        BufferedImage img = TileRasterizer.render((int) Math.ceil(getWidth() * ds), (int) Math.ceil(getHeight() * ds),
+                at, null, this::renderWorld);
+        return new AutosaveSnapshot.Snapshot(img, ds, scale, offX, offY);
+    }
+
+    // exports the visible part of the document (without selection/editor overlays), rendered in parallel tiles
     public void saveImage(File file) {
-        BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2 = image.createGraphics();
-        paint(g2);
-        g2.dispose();
+        BufferedImage image = TileRasterizer.render(getWidth(), getHeight(), viewTransform(), getBackground(), this::renderWorld);
         try {
             ImageIO.write(image, "png", file);
         } catch (IOException e) {
@@ -759,19 +1351,266 @@ static class CanvasView extends JComponent {
     // Zeichnen / Commit
     void commitShape(Point a, Point b) {
         switch (mode) {
-            case LINE -> shapes.add(new LineShape(a, b, color, penSize));
-            case RECT -> shapes.add(new RectShape(a, b, color, penSize));
-            case OVAL -> shapes.add(new OvalShape(a, b, color, penSize));
+            case LINE -> addShape(new LineShape(a, b, color, penSize));
+            case RECT -> addShape(new RectShape(a, b, color, penSize));
+            case OVAL -> addShape(new OvalShape(a, b, color, penSize));
             default -> {}
         }
     }
     void drawText(String text, Point pos) {
-        Font f = new Font(fontFamily, fontStyle, fontSize);
-        shapes.add(new TextShape(text, pos, textColor, f));
+        Font f = StyleTable.font(fontFamily, fontStyle, fontSize);
+        addShape(new TextShape(text, pos, textColor, f));
+    }
+
+    // ===== Shape list + spatial index (always go through these) =====
+    void addShape(DrawingShape s) {
+        docVersion++;
+        shapes.add(s);
+        if (s instanceof ShapeSection) lazySections++;
+        if (journal != null) journal.added(s);
+        Rectangle b = s.getBounds();
+        index.insert(s, b);
+        // new shapes are on top -> paint them into the cached tiles instead of re-rasterizing
+        tileCache.append(b, (g, w) -> { drawLod(g, s, g.getTransform().getScaleX()); return true; });
+        invalidateLayer(b);
+    }
+
+    void removeShape(DrawingShape s) {
+        docVersion++;
+        Rectangle old = index.boundsOf(s);
+        tileCache.invalidate(old);
+        invalidateLayer(old);
+        int i = shapes.lastIndexOf(s);
+        if (i >= 0) {
+            if (journal != null) journal.removed(documentIndex(i));
+            shapes.remove(i);
+            if (s instanceof ShapeSection sec) released(sec);
+        }
+        index.remove(s);
+    }
+
+    void clearShapes() {
+        docVersion++;
+        if (lazySections > 0) for (DrawingShape s : shapes) if (s instanceof ShapeSection sec) released(sec);
+        shapes.clear();
+        lazySections = 0;
+        if (journal != null) journal.cleared();
+        index.clear();
+        tileCache.clear();
+        invalidateLayer();
+    }
+
+    // replaces the document: not journaled, the caller checkpoints (see canvasex.checkpointSoon)
+    void setShapes(List<DrawingShape> list) {
+        if (journal != null) journal.suspend();
+        clearShapes();
+        for (DrawingShape s : list) {
+            addShape(s);
+            if (s instanceof ImageShape is) is.requestDecode();   // decode in the background, not in the first paint
+        }
+    }
+
+    // a section the user works in: its shapes replace it (same place in the paint order);
+    // the document itself does not change
+    void expand(ShapeSection sec) {
+        int i = shapes.lastIndexOf(sec);
+        if (i < 0) return;
+        List<DrawingShape> parts = sec.shapes();
+        List<Rectangle> bounds = new ArrayList<>(parts.size());
+        for (DrawingShape s : parts) bounds.add(s.getBounds());
+        DrawingShape next = i + 1 < shapes.size() ? shapes.get(i + 1) : null;
+        if (!index.replace(sec, parts, bounds, next)) {
+            index.renumber(shapes);
+            index.replace(sec, parts, bounds, next);
+        }
+        shapes.replace(i, parts);
+        lazySections--;
+        released(sec);
+    }
+
+    // a section left the document: a paged-out run's place in the chunk store can be reused
+    private void released(ShapeSection sec) {
+        if (chunks != null) chunks.release(sec);
+    }
+
+    // far runs paged out (ChunkStore.page): shapes becomes order, each section standing in for its
+    // parts (consecutive in the old order); like expand, the document does not change
+    void collapse(List<DrawingShape> order, Map<ShapeSection, List<DrawingShape>> runs) {
+        for (Map.Entry<ShapeSection, List<DrawingShape>> e : runs.entrySet()) {
+            index.merge(e.getValue(), e.getKey(), e.getKey().getBounds());
+        }
+        shapes.clear();
+        shapes.addAll(order);
+        lazySections = 0;
+        for (DrawingShape s : order) if (s instanceof ShapeSection) lazySections++;
+    }
+
+    // keeps the far parts of a large document on disk (ChunkStore); started with the journal
+    void startPaging() {
+        if (pager != null) return;
+        try {
+            chunks = ChunkStore.create();
+        } catch (IOException ex) {
+            System.err.println("Error creating chunk store: " + ex.getMessage());
+            return;
+        }
+        pager = new Timer(ChunkStore.PAGE_MS, e -> chunks.page(this));
+        pager.start();
+    }
+
+    // index of shapes.get(i) in the document as saved, i.e. with every section counted as its shapes
+    int documentIndex(int i) {
+        if (lazySections == 0) return i;
+        int n = 0;
+        for (int j = 0; j < i; j++) n += shapes.get(j) instanceof ShapeSection sec ? sec.count : 1;
+        return n;
+    }
+
+    /** Hear about decoded images and new image levels (addNotify; headless drivers like InputReplay call it themselves). */
+    void listenForImages(boolean on) {
+        if (on == listening) return;
+        listening = on;
+        if (on) {
+            // a sharper pre-scaled image level became available -> redraw that image
+            ImageMipCache.addListener(mipListener);
+            // dropped / loaded images finished decoding -> replace their placeholder
+            ImageShape.addReadyListener(readyListener);
+        } else {
+            ImageMipCache.removeListener(mipListener);
+            ImageShape.removeReadyListener(readyListener);
+        }
+    }
+
+    @Override public void addNotify() {
+        super.addNotify();
+        listenForImages(true);
+    }
+
+    @Override public void removeNotify() {
+        listenForImages(false);
+        super.removeNotify();
+    }
+
+    // image pixels changed (new mip level, decoded data): re-render where it is shown
+    void imageChanged(BufferedImage src) {
+        ImageShape is = ImageShape.showing(src);
+        if (is != null) imageReady(is);
+    }
+
+    // images of a decoded section are not in the index themselves
+    private boolean inSection(ImageShape is) {
+        if (lazySections == 0) return false;
+        for (DrawingShape s : index.query(is.getBounds())) {
+            if (s instanceof ShapeSection sec && sec.decoded().contains(is)) return true;
+        }
+        return false;
+    }
+
+    void imageReady(ImageShape is) {
+        if (!index.contains(is) && !inSection(is)) return;
+        Rectangle b = is.getBounds();
+        tileCache.invalidate(b);
+        invalidateLayer(b);
+        repaintWorld(b);
+    }
+
+    // call before mutating a shape's geometry in place (a running autosave keeps the old state)
+    void willChange(DrawingShape s) {
+        if (saving != null) saving.willChange(s);
+    }
+
+    // call after mutating a shape's geometry in place
+    void shapeMoved(DrawingShape s) {
+        docVersion++;
+        if (journal != null) journal.moved(s);
+        Rectangle b = s.getBounds();
+        Rectangle old = index.boundsOf(s);
+        tileCache.invalidate(old);
+        tileCache.invalidate(b);
+        invalidateLayer(old);
+        invalidateLayer(b);
+        index.update(s, b);
+    }
+
+    // ===== Dirty-region repaint =====
+    // repaint the screen area covering the union of the given world rects (nulls ignored)
+    void repaintWorld(Rectangle... world) {
+        Rectangle u = null;
+        for (Rectangle r : world) {
+            if (r == null) continue;
+            if (u == null) u = new Rectangle(r); else u.add(r);
+        }
+        if (u == null) return;
+        Rectangle sr = viewTransform().createTransformedShape(u).getBounds();
+        sr.grow(2, 2);
+        repaint(sr);
+    }
+
+    // what a selected shape occupies on screen, incl. frame and handles
+    Rectangle selectionBounds(DrawingShape s) {
+        Rectangle b = s.getBounds();
+        b.grow(SELECTION_PAD, SELECTION_PAD);
+        return b;
+    }
+
+    // rubber-band preview for LINE/RECT/OVAL
+    private Rectangle previewBounds() {
+        if (dragStartWorld == null || dragNowWorld == null) return null;
+        return strokeBounds(dragStartWorld, dragNowWorld, penSize + 1);
+    }
+
+    // text editor: text, selection highlight and caret; repaints the old and new extent
+    private void repaintEditor() {
+        Rectangle now = null;
+        if (typing && textStartWorld != null) {
+            now = getTextBounds(textStartWorld, textBuffer.toString());
+            int pad = 4 + fontSize / 4; // caret + metric differences between component and g2d fonts
+            now.grow(pad, pad);
+        }
+        repaintWorld(lastEditorBounds, now);
+        lastEditorBounds = now;
+        // keep the caret solid while typing
+        caretVisible = true;
+        if (typing) caretTimer.restart(); else caretTimer.stop();
+    }
+
+    private void blinkCaret() {
+        if (!typing) { caretTimer.stop(); caretVisible = true; return; }
+        caretVisible = !caretVisible;
+        repaintWorld(lastEditorBounds);
+    }
+
+    // TileCache.TileRenderer: draws the committed shapes intersecting a world rect
+    private boolean renderWorld(Graphics2D g, Rectangle world) {
+        List<DrawingShape> hits = index.query(world);
+        double px = g.getTransform().getScaleX();
+        for (DrawingShape s : hits) {
+            // a section's shapes are culled like the index culls (not by the clip: same pixels either way)
+            if (s instanceof ShapeSection sec) {
+                for (DrawingShape t : sec.shapes()) if (t.getBounds().intersects(world)) drawLod(g, t, px);
+            } else {
+                drawLod(g, s, px);
+            }
+        }
+        PerfStats.shapesDrawn(hits.size());
+        return !hits.isEmpty();
+    }
+
+    // world-space rectangle covered by the given screen rectangle
+    Rectangle screenToWorld(Rectangle r) {
+        try {
+            Shape w = viewTransform().createInverse().createTransformedShape(r);
+            Rectangle b = w.getBounds();
+            b.grow(1, 1);
+            return b;
+        } catch (NoninvertibleTransformException ex) {
+            return new Rectangle(r);
+        }
     }
 
     @Override protected void paintComponent(Graphics g) {
-        if (isOpaque()) {
+        long perfT0 = PerfStats.frameStart(), perfA0 = PerfStats.allocStart();
+        if (isOpaque() && !layerEnabled) {
             g.setColor(getBackground());
             g.fillRect(0, 0, getWidth(), getHeight());
         }
@@ -779,17 +1618,47 @@ static class CanvasView extends JComponent {
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g.create();
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.transform(viewTransform());
 
-        // gespeicherte Shapes
-        for (DrawingShape s : shapes) s.draw(g2);
+        // gespeicherte Shapes - only those intersecting the (inverse-transformed) clip
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        if (layerEnabled) {
+            // committed content is one blit; everything below is the live overlay
+            paintCommittedLayer(g2);
+            g2.transform(viewTransform());
+        } else if (tileCacheEnabled) {
+            paintTiles(g2, clip);
+            g2.transform(viewTransform());
+        } else {
+            g2.transform(viewTransform());
+            double px = g2.getTransform().getScaleX();
+            List<DrawingShape> hits = index.query(screenToWorld(clip));
+            for (DrawingShape s : hits) drawLod(g2, s, px);
+            PerfStats.shapesDrawn(hits.size());
+        }
+
+        if (preview != null) {
+            // snapshot pixels -> world, so it follows pan/zoom until the real shapes replace it
+            Graphics2D pg = (Graphics2D) g2.create();
+            pg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            pg.scale(1 / preview.scale(), 1 / preview.scale());
+            pg.translate(-preview.offX(), -preview.offY());
+            pg.scale(1 / preview.devScale(), 1 / preview.devScale());
+            pg.drawImage(preview.img(), 0, 0, null);
+            pg.dispose();
+        }
+
+        // pen stroke in progress
+        if (liveStroke != null) liveStroke.draw(g2);
 
         // === Auswahlrahmen ===
         if (selectedShape != null) {
-            g2.setColor(new Color(60,120,255,120));
-            g2.setStroke(new BasicStroke(2f));
+            g2.setColor(SELECTION_COLOR);
+            g2.setStroke(SELECTION_STROKE);
             if (selectedShape instanceof LineShape l) {
                 g2.drawLine(l.a.x, l.a.y, l.b.x, l.b.y);
+            } else if (selectedShape instanceof StrokeShape st) {
+                g2.draw(st.path());
             } else if (selectedShape instanceof RectShape r) {
                 g2.drawRect(Math.min(r.a.x, r.b.x), Math.min(r.a.y, r.b.y),
                     Math.abs(r.a.x - r.b.x), Math.abs(r.a.y - r.b.y));
@@ -797,8 +1666,8 @@ static class CanvasView extends JComponent {
                 g2.drawOval(Math.min(o.a.x, o.b.x), Math.min(o.a.y, o.b.y),
                     Math.abs(o.a.x - o.b.x), Math.abs(o.a.y - o.b.y));
             } else if (selectedShape instanceof TextShape t) {
-                Rectangle bounds = getTextBounds(t.pos, t.text);
-                if (bounds != null) g2.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
+                Rectangle bounds = t.textBox();
+                g2.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
             } else if (selectedShape instanceof ImageShape im) {
                 Rectangle b = im.getBounds();
                 g2.drawRect(b.x, b.y, b.width, b.height);
@@ -809,8 +1678,8 @@ static class CanvasView extends JComponent {
                 g2.fillRect(b.x + b.width - hs/2, b.y - hs/2, hs, hs);
                 g2.fillRect(b.x + b.width - hs/2, b.y + b.height - hs/2, hs, hs);
                 g2.fillRect(b.x - hs/2, b.y + b.height - hs/2, hs, hs);
-                g2.setColor(new Color(60,120,255,200));
-                g2.setStroke(new BasicStroke(1f));
+                g2.setColor(HANDLE_COLOR);
+                g2.setStroke(THIN_STROKE);
                 g2.drawRect(b.x - hs/2, b.y - hs/2, hs, hs);
                 g2.drawRect(b.x + b.width - hs/2, b.y - hs/2, hs, hs);
                 g2.drawRect(b.x + b.width - hs/2, b.y + b.height - hs/2, hs, hs);
@@ -834,7 +1703,7 @@ static class CanvasView extends JComponent {
         // Live-Tippen preview and caret/selection
         if (typing && textStartWorld != null) {
             g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-            g2.setFont(new Font(fontFamily, fontStyle, fontSize));
+            g2.setFont(StyleTable.font(fontFamily, fontStyle, fontSize));
             FontMetrics fm = g2.getFontMetrics();
             int lineHeight = fm.getHeight();
             String[] lines = textBuffer.toString().split("\n", -1);
@@ -854,7 +1723,7 @@ static class CanvasView extends JComponent {
                         int px1 = textStartWorld.x + fm.stringWidth(lines[li].substring(0, sx - lineStart));
                         int px2 = textStartWorld.x + fm.stringWidth(lines[li].substring(0, ex - lineStart));
                         int y = textStartWorld.y + li * lineHeight - fm.getAscent();
-                        g2.setColor(new Color(60,120,255,80));
+                        g2.setColor(TEXT_SELECTION_COLOR);
                         g2.fillRect(px1, y, Math.max(2, px2 - px1), lineHeight);
                     }
                     idx += lineLen + 1;
@@ -893,33 +1762,179 @@ static class CanvasView extends JComponent {
             }
             int cx = textStartWorld.x + g2.getFontMetrics().stringWidth(lines[Math.max(0, Math.min(caretLine, lines.length - 1))].substring(0, Math.max(0, Math.min(caretCol, lines[Math.max(0, Math.min(caretLine, lines.length - 1))].length()))));
             int cy = textStartWorld.y + caretLine * lineHeight - g2.getFontMetrics().getAscent();
-            g2.setColor(Color.BLACK);
-            g2.setStroke(new BasicStroke(1f));
-            g2.drawLine(cx, cy, cx, cy + lineHeight);
+            if (caretVisible) {
+                g2.setColor(Color.BLACK);
+                g2.setStroke(THIN_STROKE);
+                g2.drawLine(cx, cy, cx, cy + lineHeight);
+            }
         }
 
         g2.dispose();
+
+        if (!painted) {
+            painted = true;
+            StartupLog.mark(preview != null ? "first frame (autosave preview)" : "first frame");
+        }
+
+        if (showDirtyRegions) {
+            Graphics2D dg = (Graphics2D) g.create();
+            dg.setColor(Color.getHSBColor((dirtyFlash++ % 12) / 12f, 1f, 1f));
+            dg.setStroke(THIN_STROKE);
+            dg.drawRect(clip.x, clip.y, clip.width - 1, clip.height - 1);
+            dg.dispose();
+        }
+
+        // the HUD's own refreshes are not frames
+        if (perfHudBounds == null || !perfHudBounds.contains(clip)) PerfStats.frameEnd(perfT0, perfA0, shapes.size());
+        if (showPerfHud) {
+            Graphics2D hg = (Graphics2D) g.create();
+            Rectangle r = PerfStats.paintHud(hg, getWidth(), getHeight());
+            hg.dispose();
+            // union: a shorter text must still clear the wider one before it
+            perfHudBounds = perfHudBounds == null ? r : perfHudBounds.union(r);
+        }
+    }
+
+    // ===== Committed layer =====
+    // The document rendered once for the current view (device pixels, incl. background).
+    // Overlay-only repaints (preview, selection, caret) blit it instead of re-rendering shapes.
+    private void paintCommittedLayer(Graphics2D g2) {
+        AffineTransform dev = g2.getTransform();
+        double ds = dev.getScaleX();
+        int lw = (int) Math.ceil(getWidth() * ds), lh = (int) Math.ceil(getHeight() * ds);
+        if (lw <= 0 || lh <= 0) return;
+
+        if (committedLayer == null || committedLayer.getWidth() != lw || committedLayer.getHeight() != lh
+                || ds != layerDevScale) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            committedLayer = (gc != null) ? gc.createCompatibleImage(lw, lh, Transparency.OPAQUE)
+                    : new BufferedImage(lw, lh, BufferedImage.TYPE_INT_RGB);
+            layerDevScale = ds;
+            layerDirty = new Rectangle(0, 0, lw, lh);
+        } else if (scale != layerScale) {
+            layerDirty = new Rectangle(0, 0, lw, lh);
+        } else if (offX != layerOffX || offY != layerOffY) {
+            scrollLayer((offX - layerOffX) * ds, (offY - layerOffY) * ds);
+        }
+        layerScale = scale; layerOffX = offX; layerOffY = offY;
+
+        if (layerDirty != null) {
+            renderLayer(layerDirty.intersection(new Rectangle(0, 0, lw, lh)));
+            layerDirty = null;
+        }
+
+        g2.setTransform(AffineTransform.getTranslateInstance(dev.getTranslateX(), dev.getTranslateY()));
+        g2.drawImage(committedLayer, 0, 0, null);
+        g2.setTransform(dev);
+    }
+
+    // panning: shift the existing pixels and only render the uncovered strips
+    private void scrollLayer(double dx, double dy) {
+        int lw = committedLayer.getWidth(), lh = committedLayer.getHeight();
+        int idx = (int) Math.round(dx), idy = (int) Math.round(dy);
+        if (Math.abs(dx - idx) > 1e-6 || Math.abs(dy - idy) > 1e-6 || Math.abs(idx) >= lw || Math.abs(idy) >= lh) {
+            layerDirty = new Rectangle(0, 0, lw, lh);
+            return;
+        }
+        Graphics2D lg = committedLayer.createGraphics();
+        lg.copyArea(0, 0, lw, lh, idx, idy);
+        lg.dispose();
+        if (layerDirty != null) layerDirty.translate(idx, idy);
+        if (idx > 0) addLayerDirty(new Rectangle(0, 0, idx, lh));
+        if (idx < 0) addLayerDirty(new Rectangle(lw + idx, 0, -idx, lh));
+        if (idy > 0) addLayerDirty(new Rectangle(0, 0, lw, idy));
+        if (idy < 0) addLayerDirty(new Rectangle(0, lh + idy, lw, -idy));
+    }
+
+    private void renderLayer(Rectangle r) {
+        if (r.isEmpty()) return;
+        double ds = layerDevScale;
+        Graphics2D lg = committedLayer.createGraphics();
+        lg.setClip(r);
+        lg.setColor(getBackground());
+        lg.fillRect(r.x, r.y, r.width, r.height);
+        lg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (tileCacheEnabled) {
+            tileCache.paint(lg, scale * ds, offX * ds, offY * ds, r, this::renderWorld);
+        } else {
+            lg.scale(ds, ds);
+            Rectangle world = screenToWorld(new Rectangle((int) Math.floor(r.x / ds), (int) Math.floor(r.y / ds),
+                    (int) Math.ceil(r.width / ds) + 1, (int) Math.ceil(r.height / ds) + 1));
+            lg.transform(viewTransform());
+            renderWorld(lg, world);
+        }
+        lg.dispose();
+    }
+
+    private void addLayerDirty(Rectangle r) {
+        if (layerDirty == null) layerDirty = new Rectangle(r); else layerDirty.add(r);
+    }
+
+    // committed content changed inside these world bounds
+    void invalidateLayer(Rectangle world) {
+        if (committedLayer == null || world == null) return;
+        // in the view the layer was rendered for: the next paint scrolls layerDirty along with the pixels
+        AffineTransform at = new AffineTransform();
+        at.translate(layerOffX, layerOffY);
+        at.scale(layerScale, layerScale);
+        Rectangle r = at.createTransformedShape(world).getBounds();
+        double ds = layerDevScale;
+        addLayerDirty(new Rectangle((int) Math.floor(r.x * ds) - 2, (int) Math.floor(r.y * ds) - 2,
+                (int) Math.ceil(r.width * ds) + 4, (int) Math.ceil(r.height * ds) + 4));
+    }
+
+    void invalidateLayer() {
+        if (committedLayer != null) layerDirty = new Rectangle(0, 0, committedLayer.getWidth(), committedLayer.getHeight());
+    }
+
+    // blit cached tiles in device pixels so HiDPI output stays crisp
+    private void paintTiles(Graphics2D g2, Rectangle clip) {
+        AffineTransform dev = g2.getTransform();
+        double ds = dev.getScaleX();
+        Rectangle devClip = dev.createTransformedShape(clip).getBounds();
+        g2.setTransform(new AffineTransform());
+        tileCache.paint(g2, scale * ds, dev.getTranslateX() + offX * ds, dev.getTranslateY() + offY * ds,
+                devClip, this::renderWorld);
+        g2.setTransform(dev);
     }
 
     // === Hilfsmethoden für Auswahl und Textfeld ===
-    private boolean shapeContains(DrawingShape s, Point p) {
+
+    // topmost shape under a world point (selection); mapped sections there are loaded first
+    MovableShape shapeAt(Point w) {
+        Rectangle r = new Rectangle(w.x - HIT_SLOP, w.y - HIT_SLOP, 2 * HIT_SLOP, 2 * HIT_SLOP);
+        List<DrawingShape> near = index.query(r);
+        if (lazySections > 0) {
+            boolean expanded = false;
+            for (DrawingShape s : near) {
+                if (s instanceof ShapeSection sec) { expand(sec); expanded = true; }
+            }
+            if (expanded) near = index.query(r);
+        }
+        for (int i = near.size() - 1; i >= 0; i--) {
+            if (near.get(i) instanceof MovableShape m && shapeContains(m, w)) return m;
+        }
+        return null;
+    }
+
+    boolean shapeContains(DrawingShape s, Point p) {
         if (s instanceof LineShape l) {
             double dist = ptSegDist(l.a.x, l.a.y, l.b.x, l.b.y, p.x, p.y);
-            return dist < Math.max(8, l.size + 6);
+            return dist < Math.max(8, l.style().size + 6);
+        } else if (s instanceof StrokeShape st) {
+            return st.distanceTo(p.x, p.y) < Math.max(8, st.style().size + 6);
         } else if (s instanceof RectShape r) {
-            Rectangle rect = new Rectangle(Math.min(r.a.x, r.b.x), Math.min(r.a.y, r.b.y),
-                    Math.abs(r.a.x - r.b.x), Math.abs(r.a.y - r.b.y));
-            return rect.contains(p);
+            return p.x >= Math.min(r.a.x, r.b.x) && p.x < Math.max(r.a.x, r.b.x)
+                && p.y >= Math.min(r.a.y, r.b.y) && p.y < Math.max(r.a.y, r.b.y);
         } else if (s instanceof OvalShape o) {
-            Ellipse2D oval = new Ellipse2D.Double(Math.min(o.a.x, o.b.x), Math.min(o.a.y, o.b.y),
-                    Math.abs(o.a.x - o.b.x), Math.abs(o.a.y - o.b.y));
-            return oval.contains(p);
+            double rx = Math.abs(o.a.x - o.b.x) / 2.0, ry = Math.abs(o.a.y - o.b.y) / 2.0;
+            if (rx <= 0 || ry <= 0) return false;
+            double nx = (p.x - (Math.min(o.a.x, o.b.x) + rx)) / rx, ny = (p.y - (Math.min(o.a.y, o.b.y) + ry)) / ry;
+            return nx * nx + ny * ny < 1.0;
         } else if (s instanceof TextShape t) {
-            Rectangle bounds = getTextBounds(t.pos, t.text);
-            return bounds != null && bounds.contains(p);
+            return t.textContains(p.x, p.y);
         } else if (s instanceof ImageShape im) {
-            Rectangle bounds = im.getBounds();
-            return bounds.contains(p);
+            return p.x >= im.x && p.y >= im.y && p.x < im.x + im.width && p.y < im.y + im.height;
         }
         return false;
     }
@@ -935,7 +1950,7 @@ static class CanvasView extends JComponent {
 
     private Rectangle getTextBounds(Point pos, String text) {
         if (pos == null || text == null) return null;
-        FontMetrics fm = getFontMetrics(new Font(fontFamily, fontStyle, fontSize));
+        FontMetrics fm = getFontMetrics(StyleTable.font(fontFamily, fontStyle, fontSize));
         String[] lines = text.split("\n", -1);
         int w = 0;
         for (String ln : lines) w = Math.max(w, fm.stringWidth(ln));
@@ -959,52 +1974,180 @@ static class CanvasView extends JComponent {
         return -1;
     }
 
-    // === ImageShape nested class (stores image bytes for serialization) ===
-    static class ImageShape implements DrawingShape, Serializable {
+    // === ImageShape nested class (stores the original image bytes for serialization) ===
+    static class ImageShape implements MovableShape, Serializable {
         private static final long serialVersionUID = 1L;
-        transient BufferedImage img;
-        byte[] imgBytes;
+        transient volatile BufferedImage img;
+        byte[] imgBytes;   // file as dropped (a JPEG stays a JPEG); PNG only for in-memory images
         int x, y, width, height;
 
+        // file reads, decoding and encoding run here, never on the EDT
+        private static final ExecutorService IMAGE_IO = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), r -> {
+                    Thread t = new Thread(r, "image-io");
+                    t.setDaemon(true);
+                    return t;
+                });
+        private static final List<Consumer<ImageShape>> readyListeners = new CopyOnWriteArrayList<>();
+        // the shape each decoded image belongs to (ImageMipCache reports images, not shapes)
+        private static final Map<BufferedImage, java.lang.ref.WeakReference<ImageShape>> owners =
+                java.util.Collections.synchronizedMap(new java.util.WeakHashMap<>());
+
+        private transient Future<?> pending;   // read/decode/encode in flight
+        private transient boolean failed;      // undecodable bytes -> keep the placeholder
+
         ImageShape(BufferedImage img, int x, int y, int w, int h) {
+            this(x, y, w, h);
             setImage(img);
+        }
+
+        // no pixels yet (fromFile / project loading / benchmarks fill in img + imgBytes)
+        ImageShape(int x, int y, int w, int h) {
             this.x = x; this.y = y; this.width = w; this.height = h;
         }
 
+        /** Image file shape; the bytes are read and decoded in the background, a placeholder is drawn until then. */
+        static ImageShape fromFile(File f, int x, int y, int w, int h) {
+            ImageShape s = new ImageShape(x, y, w, h);
+            synchronized (s) {
+                s.pending = IMAGE_IO.submit(() -> {
+                    try {
+                        s.imgBytes = Files.readAllBytes(f.toPath());
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                    s.decode();
+                });
+            }
+            return s;
+        }
+
+        /** Pixel size from the file header only (no decoding); null if ImageIO can't read the format. */
+        static Dimension readSize(File f) throws IOException {
+            try (javax.imageio.stream.ImageInputStream in = ImageIO.createImageInputStream(f)) {
+                if (in == null) return null;
+                java.util.Iterator<javax.imageio.ImageReader> it = ImageIO.getImageReaders(in);
+                if (!it.hasNext()) return null;
+                javax.imageio.ImageReader r = it.next();
+                try {
+                    r.setInput(in, true, true);
+                    return new Dimension(r.getWidth(0), r.getHeight(0));
+                } finally {
+                    r.dispose();
+                }
+            }
+        }
+
+        /** The shape showing im, if it is still around. */
+        static ImageShape showing(BufferedImage im) {
+            java.lang.ref.WeakReference<ImageShape> r = owners.get(im);
+            return r != null ? r.get() : null;
+        }
+
+        /** Listeners run on an image-io thread once a shape's pixels are available (or failed to decode). */
+        static void addReadyListener(Consumer<ImageShape> l) { readyListeners.add(l); }
+
+        static void removeReadyListener(Consumer<ImageShape> l) { readyListeners.remove(l); }
+
         void setImage(BufferedImage im) {
-            this.img = im;
-            try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ImageIO.write(im, "png", baos);
-                baos.flush();
-                imgBytes = baos.toByteArray();
-                baos.close();
-            } catch (Exception ex) {
+            if (img != null && img != im) ImageMipCache.forget(img);
+            if (im != null) owners.put(im, new java.lang.ref.WeakReference<>(this));
+            synchronized (this) {
+                img = im;
+                failed = false;
                 imgBytes = null;
+                pending = IMAGE_IO.submit(() -> {
+                    byte[] b = null;
+                    try {
+                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        ImageIO.write(im, "png", baos);
+                        b = baos.toByteArray();
+                    } catch (Exception ignored) {}
+                    synchronized (this) {
+                        if (img == im) { imgBytes = b; pending = null; }
+                    }
+                });
             }
         }
 
-        private void ensureImageLoaded() {
-            if (img == null && imgBytes != null) {
+        // start decoding imgBytes (after loading a project); no-op if already decoded or in flight
+        synchronized void requestDecode() {
+            if (img == null && imgBytes != null && pending == null && !failed) pending = IMAGE_IO.submit(this::decode);
+        }
+
+        private void decode() {
+            BufferedImage im = null;
+            byte[] b = imgBytes;
+            if (b != null) {
+                long t0 = System.nanoTime();
                 try {
-                    img = ImageIO.read(new ByteArrayInputStream(imgBytes));
-                } catch (IOException ignored) { img = null; }
+                    im = ImageIO.read(new ByteArrayInputStream(b));
+                } catch (Exception ignored) {}
+                if (im != null) PerfStats.imageDecoded(System.nanoTime() - t0);
+            }
+            if (im != null) owners.put(im, new java.lang.ref.WeakReference<>(this));
+            synchronized (this) {
+                img = im;
+                failed = (im == null);
+                pending = null;
             }
+            for (Consumer<ImageShape> l : readyListeners) l.accept(this);
+        }
+
+        // blocks until the pending read/decode/encode is done (serialization, exports)
+        private void awaitPending() {
+            Future<?> f;
+            synchronized (this) { f = pending; }
+            if (f == null) return;
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {}
         }
 
-        Rectangle getBounds() { return new Rectangle(x, y, width, height); }
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            awaitPending();
+            out.defaultWriteObject();
+        }
+
+        // file bytes as they are now, without waiting (ChunkStore); null while encoding
+        synchronized byte[] bytesNow() { return imgBytes; }
+
+        // file bytes for saving (after a pending read / encode); null if there are none
+        byte[] bytes() {
+            awaitPending();
+            return imgBytes;
+        }
+
+        @Override public Rectangle getBounds() { return new Rectangle(x, y, width, height); }
         void setBounds(Rectangle r) { x = r.x; y = r.y; width = r.width; height = r.height; }
+        @Override public void translate(int dx, int dy) { x += dx; y += dy; }
 
         @Override public void draw(Graphics2D g) {
-            ensureImageLoaded();
             if (img == null) {
+                boolean edt = SwingUtilities.isEventDispatchThread();
+                if (!edt) awaitPending();        // exports need the real pixels
+                requestDecode();
+                if (!edt) awaitPending();
+            }
+            BufferedImage im = img;
+            if (im == null) {
                 g.setColor(new Color(180,180,180));
                 g.fillRect(x, y, width, height);
                 g.setColor(Color.DARK_GRAY);
                 g.drawRect(x, y, width, height);
                 return;
             }
-            g.drawImage(img, x, y, width, height, null);
+            // draw from the pyramid level closest to the on-screen size (exports wait for it)
+            AffineTransform t = g.getTransform();
+            double dw = width * Math.hypot(t.getScaleX(), t.getShearY());
+            double dh = height * Math.hypot(t.getShearX(), t.getScaleY());
+            BufferedImage src = ImageMipCache.level(im, dw, dh, !SwingUtilities.isEventDispatchThread());
+            Object oldInterp = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, x, y, width, height, null);
+            if (oldInterp != null) g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterp);
         }
     }
 
@@ -1021,6 +2164,8 @@ static class CanvasView extends JComponent {
     private JPanel colorPanel;   // HSV + Pen-Size (Mitte/pencil)
     private JPanel modePanel;    // Mode-Auswahl (links/ecke)
     private JPanel textPanel;    // Text-Optionen (rechts/scale)
+    // built on first open or after startup in idle time (see buildPanelsWhenIdle)
+    private static final int IDLE_BUILD_MS = 40;
 
     // Runde Hauptbuttons
     private Roundheadbutton btnModes, btnColor, btnText;
@@ -1031,9 +2176,21 @@ static class CanvasView extends JComponent {
     private JComponent visibleAnchor = null;
     private int visibleW = 0, visibleH = 0;
 
-    // autosave file + timer
-    private final File autosaveFile = new File(System.getProperty("user.home"), ".canvas_autosave.cvs");
+    // autosave file + its snapshot picture + timer
+    private static final File autosaveFile = new File(System.getProperty("user.home"), ".canvas_autosave.cvs");
+    private static final File autosaveSnapshotFile = new File(System.getProperty("user.home"), ".canvas_autosave.snap");
     private Timer autosaveTimer;
+    private static final ExecutorService AUTOSAVE_IO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "autosave");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private boolean checkpointAgain;   // checkpoint requested while one was being written
+
+    // startup restore: view set by the preview; a user pan/zoom before the document arrives wins
+    private boolean autosaveRestored;
+    private double restoreScale, restoreOffX, restoreOffY;
 
     public canvasex() {
         super("Freeplay"); // App-Name
@@ -1073,7 +2230,7 @@ static class CanvasView extends JComponent {
         // Ganz links: Reset + Save/Load
         RectShadowButton clearBtn = new RectShadowButton("New");
         clearBtn.addActionListener(e -> {
-            cv.shapes.clear();
+            cv.clearShapes();
             cv.repaint();
             cv.requestFocusInWindow();
         });
@@ -1119,15 +2276,7 @@ static class CanvasView extends JComponent {
         dropHost.setPreferredSize(new Dimension(10, 0)); // dauerhaft eingefahren
         topStack.add(dropHost, BorderLayout.CENTER);
 
-        // ===== Dropdown-Panels bauen =====
-        colorPanel = buildColorPanel(); // HSV + PenSize
-        modePanel  = buildModePanel();  // runde Mode-Buttons
-        textPanel  = buildTextPanel();  // Font + Stil + Größe + HSV für Text
-
-        // Im dropHost  (unsichtbar)
-        dropHost.add(colorPanel);
-        dropHost.add(modePanel);
-        dropHost.add(textPanel);
+        // Dropdown-Panels: lazy (colorPanel() / modePanel() / textPanel()), parked in dropHost
 
         // safe: hide dropdowns (glass already initialized)
         hideAllDropdowns();
@@ -1142,9 +2291,9 @@ static class CanvasView extends JComponent {
         });
 
         // Button-Logik → Overlay direkt unter dem jeweiligen Button
-        btnModes.addActionListener(e -> toggleDropdownOverlay(modePanel, btnModes, 180, 130));
-        btnColor.addActionListener(e -> toggleDropdownOverlay(colorPanel, btnColor, 320,110));
-        btnText.addActionListener(e -> toggleDropdownOverlay(textPanel,  btnText,  360, 240));
+        btnModes.addActionListener(e -> toggleDropdownOverlay(modePanel(), btnModes, 180, 130));
+        btnColor.addActionListener(e -> toggleDropdownOverlay(colorPanel(), btnColor, 320,110));
+        btnText.addActionListener(e -> toggleDropdownOverlay(textPanel(),  btnText,  360, 240));
 
         // ===== Canvas als Center =====
         JScrollPane scroller = new JScrollPane(cv);
@@ -1179,9 +2328,9 @@ static class CanvasView extends JComponent {
             }
         });
 
-        // ===== Autosave Timer (every 30s) -> silent save to autosaveFile
+        // ===== Autosave Timer (every 30s) -> full save to autosaveFile once the journal asks for it
         autosaveTimer = new Timer(30_000, e -> {
-            saveProjectSilent(autosaveFile);
+            if (autosaveRestored && cv.journal != null && cv.journal.checkpointDue()) saveAutosave(false);
         });
         autosaveTimer.setRepeats(true);
         autosaveTimer.start();
@@ -1189,7 +2338,10 @@ static class CanvasView extends JComponent {
         // Save once on exit (best-effort)
         addWindowListener(new WindowAdapter() {
             @Override public void windowClosing(WindowEvent e) {
-                saveProjectSilent(autosaveFile);
+                cv.stopRecording();
+                // still loading: the autosave + journal on disk are newer than what is shown
+                if (autosaveRestored) saveAutosave(true);
+                if (cv.journal != null) cv.journal.close();
                 super.windowClosing(e);
             }
         });
@@ -1198,38 +2350,16 @@ static class CanvasView extends JComponent {
     // ===== Utils: Icons / Round Buttons / Dropdowns =====
         // ...existing code...
     private static ImageIcon loadSvgIcon(String path, int size) {
-        try {
-            // detect screen scale (HiDPI)
-            GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
-            AffineTransform d2d = gd.getDefaultConfiguration().getDefaultTransform();
-            double scale = Math.max(1.0, Math.max(d2d.getScaleX(), d2d.getScaleY()));
-    
-            float targetW = (float) Math.ceil(size * scale);
-            float targetH = (float) Math.ceil(size * scale);
-    
-            byte[] svgBytes = Files.readAllBytes(Paths.get(path));
-            TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(svgBytes));
-    
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            TranscoderOutput output = new TranscoderOutput(out);
-    
-            PNGTranscoder transcoder = new PNGTranscoder();
-            transcoder.addTranscodingHint(PNGTranscoder.KEY_WIDTH, targetW);
-            transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, targetH);
-            transcoder.transcode(input, output);
-    
-            out.flush();
-            BufferedImage img = javax.imageio.ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
-    
-            // store device scale as client property in the ImageIcon (optional)
-            ImageIcon ic = new ImageIcon(img);
-            ic.getImage().getGraphics(); // noop to ensure image exists
-            ic.setDescription(String.valueOf(scale));
-            return ic;
-        } catch (Exception e) {
+        // rasterized once per size/scale (memory + disk cache, see IconService)
+        double scale = IconService.screenScale();
+        BufferedImage img = IconService.icon(path, size, scale);
+        if (img == null) {
             // fallback: return empty icon to avoid NPE
             return new ImageIcon(new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB));
         }
+        ImageIcon ic = new ImageIcon(img);
+        ic.setDescription(String.valueOf(scale));
+        return ic;
     }
     // ...existing code...
 
@@ -1261,18 +2391,9 @@ static class CanvasView extends JComponent {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
             int w = getWidth(), h = getHeight();
-            Shape pill = new RoundRectangle2D.Double(2, 2, Math.max(0, w - 4), Math.max(0, h - 4), h, h);
 
-            // shadow and background like round buttons but pill-shaped
-            paintSoftShadow(g2, pill, 2, 0.05f);
-            g2.setColor(new Color(240,240,255,255));//first 4 test
-            g2.fill(pill);
-
-            if (hover) {
-                g2.setStroke(new BasicStroke(2f));
-                g2.setColor(new Color(60,120,255,140));
-                g2.draw(pill);
-            }
+            // shadow and background like round buttons but pill-shaped (cached per state)
+            paintPillChrome(g2, "RoundButton", chromeState(this, hover), w, h, new Color(240,240,255,255), new Color(60,120,255,140));
 
             // draw icon centered using high-quality interpolation
             if (ico != null && ico.getImage() != null) {
@@ -1369,18 +2490,9 @@ static class CanvasView extends JComponent {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
             int w = getWidth(), h = getHeight();
-            Shape pill = new RoundRectangle2D.Double(2, 2, Math.max(0, w - 4), Math.max(0, h - 4), h, h);
-
-            // shadow and background like round buttons but pill-shaped
-            paintSoftShadow(g2, pill, 2, 0.05f);
-            g2.setColor(new Color(255,255,255,255));
-            g2.fill(pill);
 
-            if (hover) {
-                g2.setStroke(new BasicStroke(2f));
-                g2.setColor(new Color(60,120,255,140));
-                g2.draw(pill);
-            }
+            // shadow and background like round buttons but pill-shaped (cached per state)
+            paintPillChrome(g2, "Roundheadbutton", chromeState(this, hover), w, h, Color.WHITE, new Color(60,120,255,140));
 
             // draw icon centered using high-quality interpolation
             if (ico != null && ico.getImage() != null) {
@@ -1424,26 +2536,27 @@ static class CanvasView extends JComponent {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
             int w = getWidth(), h = getHeight();
-            Shape rr = new RoundRectangle2D.Double(2, 2, Math.max(0, w-4), Math.max(0, h-4), arc, arc);
-
-            // subtle soft shadow (re-uses helper)
-            paintSoftShadow(g2, rr, 2, 0.05f);
-
-            // white background, borderless look
-            g2.setColor(new Color(255,255,255,255));
-            g2.fill(rr);
-
-            // faint border
-            
-
-            // hover accent
-            if (hover) {
-                g2.setColor(new Color(240,245,255,180));
-                g2.fill(rr);
-                g2.setColor(new Color(120,160,255,100));
-                g2.setStroke(new BasicStroke(1.2f));
-                g2.draw(rr);
-            }
+            String state = chromeState(this, hover);
+
+            // shadow, white borderless background and hover accent: one cached nine-patch per state
+            int corner = 2 + arc / 2 + 3;
+            ChromeCache.paint(g2, "RectShadowButton:" + state, 0, 0, w, h, corner, corner, (cg, cw, ch) -> {
+                Shape rr = new RoundRectangle2D.Double(2, 2, Math.max(0, cw-4), Math.max(0, ch-4), arc, arc);
+                paintSoftShadow(cg, rr, 2, 0.05f);
+                cg.setColor(new Color(255,255,255,255));
+                cg.fill(rr);
+                if (!state.equals("normal")) {
+                    cg.setColor(new Color(240,245,255,180));
+                    cg.fill(rr);
+                    if (state.equals("pressed")) {
+                        cg.setColor(PRESSED_TINT);
+                        cg.fill(rr);
+                    }
+                    cg.setColor(new Color(120,160,255,100));
+                    cg.setStroke(new BasicStroke(1.2f));
+                    cg.draw(rr);
+                }
+            });
 
             // text
             g2.setColor(Color.BLACK);
@@ -1478,15 +2591,16 @@ static class CanvasView extends JComponent {
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-            Shape rr = new RoundRectangle2D.Double(6, 6, Math.max(getWidth()-12,0), Math.max(getHeight()-12,0), arc, arc);
-
-            paintSoftShadow(g2, rr, 2, 0.05f);
-            g2.setColor(new Color(255,255,255,255));
-            g2.fill(rr);
-
-            g2.setColor(new Color(255,255,255,10));
-            g2.setStroke(new BasicStroke(1f));
-            g2.draw(rr);
+            int corner = 6 + arc / 2 + 3;
+            ChromeCache.paint(g2, "RoundedPanel:" + arc, 0, 0, getWidth(), getHeight(), corner, corner, (cg, cw, ch) -> {
+                Shape rr = new RoundRectangle2D.Double(6, 6, Math.max(cw-12,0), Math.max(ch-12,0), arc, arc);
+                paintSoftShadow(cg, rr, 2, 0.05f);
+                cg.setColor(new Color(255,255,255,255));
+                cg.fill(rr);
+                cg.setColor(new Color(255,255,255,10));
+                cg.setStroke(new BasicStroke(1f));
+                cg.draw(rr);
+            });
 
             g2.dispose();
             super.paintComponent(g);
@@ -1529,14 +2643,16 @@ static class CanvasView extends JComponent {
 
             int thumbX = filledW;
             int thumbY = h / 2;
-            Ellipse2D thumb = new Ellipse2D.Double(thumbX - 10, thumbY - 10, 20, 20);
-
-            paintSoftShadow(g2, thumb, 2, 0.04f);
-            g2.setColor(Color.WHITE);
-            g2.fill(thumb);
-            g2.setColor(new Color(0,150,150,200));
-            g2.setStroke(new BasicStroke(1f));
-            g2.draw(thumb);
+            // thumb incl. shadow is a fixed-size cached image
+            ChromeCache.paint(g2, "ShadowSlider:thumb", thumbX - 14, thumbY - 14, 28, 28, 14, 14, (cg, cw, ch) -> {
+                Ellipse2D thumb = new Ellipse2D.Double(4, 4, 20, 20);
+                paintSoftShadow(cg, thumb, 2, 0.04f);
+                cg.setColor(Color.WHITE);
+                cg.fill(thumb);
+                cg.setColor(new Color(0,150,150,200));
+                cg.setStroke(new BasicStroke(1f));
+                cg.draw(thumb);
+            });
 
             g2.dispose();
         }
@@ -1626,6 +2742,41 @@ static class CanvasView extends JComponent {
 
     // ====== Panels bauen ======
 
+    private JPanel colorPanel() {
+        if (colorPanel == null) colorPanel = park(buildColorPanel()); // HSV + PenSize
+        return colorPanel;
+    }
+
+    private JPanel modePanel() {
+        if (modePanel == null) modePanel = park(buildModePanel());    // runde Mode-Buttons
+        return modePanel;
+    }
+
+    private JPanel textPanel() {
+        if (textPanel == null) textPanel = park(buildTextPanel());    // Font + Stil + Größe + HSV für Text
+        return textPanel;
+    }
+
+    // Im dropHost (unsichtbar)
+    private JPanel park(JPanel p) {
+        dropHost.add(p);
+        return p;
+    }
+
+    // after startup: build the panels not opened yet, one per timer tick so input is never held up
+    private void buildPanelsWhenIdle() {
+        List<Runnable> todo = new ArrayList<>(List.of(this::modePanel, this::colorPanel, this::textPanel));
+        Timer t = new Timer(IDLE_BUILD_MS, null);
+        t.addActionListener(e -> {
+            todo.remove(0).run();
+            if (todo.isEmpty()) {
+                t.stop();
+                StartupLog.finish("dropdown panels built");
+            }
+        });
+        t.start();
+    }
+
     // Mitte: Farbwahl-Buttons + Strichstärke
     private JPanel buildColorPanel() {
         RoundedPanel p = new RoundedPanel(20);
@@ -1800,14 +2951,12 @@ static class CanvasView extends JComponent {
         }
     }
 
-    // Silent save (no dialogs) - used by autosave and on-exit
+    // Silent save (no dialogs) - used by the save dialog; the autosave goes through saveAutosave
     private void saveProjectSilent(File file) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            ProjectData pd = new ProjectData(cv.shapes, cv.scale, cv.offX, cv.offY,
+        try {
+            writeProject(file, new ProjectData(cv.shapes, cv.scale, cv.offX, cv.offY,
                     cv.penSize, cv.color, cv.textColor,
-                    cv.fontSize, cv.fontFamily, cv.fontStyle);
-            oos.writeObject(pd);
-            oos.flush();
+                    cv.fontSize, cv.fontFamily, cv.fontStyle));
             // no dialog
         } catch (Exception ex) {
             // Log to stderr but don't spam user on autosave
@@ -1816,25 +2965,96 @@ static class CanvasView extends JComponent {
         }
     }
 
+    // autosave (= journal checkpoint) + snapshot picture: both are taken here (cheap) and written by
+    // the autosave thread; while the previous save still runs another one follows it, on exit we
+    // wait for the write; never before the startup restore is done (it would overwrite the autosave
+    // with the part of the document that is shown so far)
+    private void saveAutosave(boolean sync) {
+        if (!autosaveRestored) return;
+        if (cv.saving != null && !sync) {
+            checkpointAgain = true;
+            return;
+        }
+        Autosave.Snapshot doc = Autosave.snapshot(cv);
+        AutosaveSnapshot.Snapshot pic = cv.getWidth() > 0 && cv.getHeight() > 0 ? cv.snapshot() : null;
+        Journal journal = cv.journal;
+        cv.saving = doc;
+        Future<?> f = AUTOSAVE_IO.submit(() -> {
+            try {
+                PerfStats.autosaved(Autosave.write(doc, autosaveFile));
+                if (journal != null) journal.checkpointed(doc.journalGen());
+                if (pic != null) AutosaveSnapshot.write(autosaveSnapshotFile, autosaveFile, pic);
+            } catch (IOException ex) {
+                System.err.println("Error saving project to " + autosaveFile.getAbsolutePath() + ": " + ex.getMessage());
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    if (cv.saving != doc) return;
+                    cv.saving = null;
+                    if (checkpointAgain) {
+                        checkpointAgain = false;
+                        saveAutosave(false);
+                    }
+                });
+            }
+        });
+        if (sync) {
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                System.err.println("Error saving project: " + ex.getCause());
+            }
+        }
+    }
+
+    // temp file + fsync + rename (Autosave.replace): a failed save never destroys the previous file
+    static void writeProject(File file, ProjectData pd) throws IOException {
+        Autosave.replace(file, out -> ProjectFormat.write(out, pd));
+    }
+
+    // .cvs v2 (ProjectFormat); older files are serialized ProjectData and are imported as before
+    static ProjectData readProject(File file) throws IOException, ClassNotFoundException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            if (ProjectFormat.isV2(in)) return ProjectFormat.read(in);
+            Object o = new ObjectInputStream(in).readObject();
+            if (!(o instanceof ProjectData pd)) return null;
+            pd.shapes = StrokeShape.mergeLineChains(pd.shapes);
+            return pd;
+        }
+    }
+
+    // mapped when the file has a table of contents (shapes are loaded as they come into view), else read
+    static ProjectData openProject(File file) throws IOException, ClassNotFoundException {
+        ProjectMap map = ProjectMap.open(file);
+        return map != null ? map.project() : readProject(file);
+    }
+
+    private void applyProject(ProjectData pd, boolean view) {
+        cv.setShapes(pd.shapes);
+        if (view) {
+            cv.scale = pd.scale;
+            cv.offX = pd.offX; cv.offY = pd.offY;
+        }
+        cv.penSize = pd.penSize;
+        cv.color = pd.drawColor;
+        cv.textColor = pd.textColor;
+        cv.fontSize = pd.fontSize;
+        cv.fontFamily = pd.fontFamily;
+        cv.fontStyle = pd.fontStyle;
+        cv.repaint();
+    }
+
     private void loadProjectFromFile() {
         JFileChooser fc = new JFileChooser();
         fc.setDialogTitle("Load project");
         if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File file = fc.getSelectedFile();
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                Object o = ois.readObject();
-                if (o instanceof ProjectData pd) {
-                    cv.shapes.clear();
-                    cv.shapes.addAll(pd.shapes);
-                    cv.scale = pd.scale;
-                    cv.offX = pd.offX; cv.offY = pd.offY;
-                    cv.penSize = pd.penSize;
-                    cv.color = pd.drawColor;
-                    cv.textColor = pd.textColor;
-                    cv.fontSize = pd.fontSize;
-                    cv.fontFamily = pd.fontFamily;
-                    cv.fontStyle = pd.fontStyle;
-                    cv.repaint();
+            try {
+                ProjectData pd = openProject(file);
+                if (pd != null) {
+                    applyProject(pd, true);
+                    saveAutosave(false);   // the journal starts over from the loaded document
                     JOptionPane.showMessageDialog(this, "Project loaded:\n" + file.getAbsolutePath());
                 } else {
                     JOptionPane.showMessageDialog(this, "File not found.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -1846,9 +3066,65 @@ static class CanvasView extends JComponent {
         }
     }
 
+    // startup: the autosave picture is shown as soon as it is read, the document (autosave + journal)
+    // replaces it once read; the journal starts after that
+    private void restoreAutosave(CompletableFuture<AutosaveSnapshot.Snapshot> snap, CompletableFuture<Journal.Recovery> doc) {
+        restoreScale = cv.scale; restoreOffX = cv.offX; restoreOffY = cv.offY;
+        snap.thenAccept(s -> SwingUtilities.invokeLater(() -> {
+            if (s == null || autosaveRestored) return;
+            cv.showPreview(s);
+            restoreScale = cv.scale; restoreOffX = cv.offX; restoreOffY = cv.offY;
+            StartupLog.mark("autosave preview shown");
+        }));
+        doc.whenComplete((rec, ex) -> SwingUtilities.invokeLater(() -> {
+            autosaveRestored = true;
+            ProjectData pd = rec != null ? rec.doc() : null;
+            boolean unsaved = !cv.shapes.isEmpty();
+            if (pd != null) {
+                // strokes drawn while loading stay, on top of the restored ones
+                List<DrawingShape> drawn = new ArrayList<>(cv.shapes);
+                boolean viewUntouched = cv.scale == restoreScale && cv.offX == restoreOffX && cv.offY == restoreOffY;
+                pd.shapes.addAll(drawn);
+                applyProject(pd, viewUntouched);
+            } else if (ex != null) {
+                System.err.println("Error loading autosave " + autosaveFile.getAbsolutePath() + ": " + ex.getMessage());
+            }
+            cv.journal = new Journal(autosaveFile, cv, rec != null ? rec.nextGen() : Journal.nextGen(autosaveFile));
+            cv.startPaging();
+            // recovered edits and strokes drawn while loading are only in memory: checkpoint them
+            if (rec != null && rec.ops() > 0 || unsaved) saveAutosave(false);
+            cv.dropPreview();
+            StartupLog.mark("interactive");
+            buildPanelsWhenIdle();
+        }));
+    }
+
     // ===== main =====
     public static void main(String[] args) {
+        StartupLog.mark("main");
+        // toolbar icons, the autosave picture and the autosave itself load in parallel
+        // while the look and feel and the frame are set up
+        IconService.preload(IconService.svgFiles("icons"), 26, 28);
+        CompletableFuture<AutosaveSnapshot.Snapshot> snap = CompletableFuture.supplyAsync(
+                () -> AutosaveSnapshot.read(autosaveSnapshotFile, autosaveFile));
+        CompletableFuture<Journal.Recovery> doc = CompletableFuture.supplyAsync(() -> {
+            try {
+                ProjectData pd = autosaveFile.isFile() ? readProject(autosaveFile) : null;
+                if (pd != null) StartupLog.mark("autosave read");
+                Journal.Recovery rec = Journal.recover(autosaveFile, pd);
+                if (rec.ops() > 0) StartupLog.mark("journal replayed (" + rec.ops() + " ops)");
+                return rec;
+            } catch (IOException | ClassNotFoundException ex) {
+                throw new CompletionException(ex);
+            }
+        });
         try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); } catch (Exception ignored) {}
-        SwingUtilities.invokeLater(() -> new canvasex().setVisible(true));
+        StartupLog.mark("look and feel");
+        SwingUtilities.invokeLater(() -> {
+            canvasex f = new canvasex();
+            StartupLog.mark("frame built");
+            f.restoreAutosave(snap, doc);
+            f.setVisible(true);
+        });
     }
 }
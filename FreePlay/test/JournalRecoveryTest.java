@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Journal.recover on frames that pass the CRC but cannot be applied. */
+class JournalRecoveryTest {
+
+    @TempDir Path dir;
+
+    @Test void frameWithIndexOutOfRangeIsNotApplied() throws IOException {
+        File base = dir.resolve("auto.cvs").toFile();
+        canvasex.DrawingShape a = rect(0), b = rect(100);
+        writeJournal(base, 1,
+                new byte[] { Journal.REMOVE, 1 },
+                // the first remove is fine on its own, the last one is past the end
+                new byte[] { Journal.REMOVE, 0, Journal.REMOVE, 3 });
+
+        Journal.Recovery rec = Journal.recover(base, checkpoint(a, b));
+
+        assertEquals(1, rec.ops());
+        assertEquals(1, rec.doc().shapes.size());
+        assertSame(a, rec.doc().shapes.get(0));
+    }
+
+    @Test void indicesAreCheckedAgainstTheFrameItself() throws IOException {
+        File base = dir.resolve("auto.cvs").toFile();
+        canvasex.DrawingShape a = rect(0), b = rect(100);
+        // in range for the document, not after the clear before it
+        writeJournal(base, 1, new byte[] { Journal.CLEAR, Journal.REMOVE, 0 });
+
+        Journal.Recovery rec = Journal.recover(base, checkpoint(a, b));
+
+        assertEquals(0, rec.ops());
+        assertEquals(List.of(a, b), rec.doc().shapes);
+    }
+
+    private static canvasex.DrawingShape rect(int x) {
+        return new canvasex.RectShape(new Point(x, 0), new Point(x + 50, 40), Color.BLACK, 2);
+    }
+
+    private static canvasex.ProjectData checkpoint(canvasex.DrawingShape... shapes) {
+        canvasex.ProjectData pd = new canvasex.ProjectData(List.of(shapes), 1.0, 0, 0, 4, Color.BLACK, Color.BLACK,
+                24, "Arial", Font.PLAIN);
+        pd.journalGen = 1;
+        return pd;
+    }
+
+    // header and frames as Journal writes them, each frame with a valid CRC
+    private static void writeJournal(File base, long gen, byte[]... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Journal.MAGIC);
+        out.writeByte(Journal.VERSION);
+        out.writeLong(gen);
+        for (byte[] f : frames) {
+            CRC32 crc = new CRC32();
+            crc.update(f);
+            out.writeInt(f.length);
+            out.writeInt((int) crc.getValue());
+            out.write(f);
+        }
+        Files.write(Journal.file(base, gen).toPath(), bytes.toByteArray());
+    }
+}
@@ -0,0 +1,159 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import freeplay.bench.Workload;
+
+/**
+ * CanvasWorkload — synthetic documents for the benchmarks (default package, so it can reach
+ * the app's package-private CanvasView API). Shapes are laid out one per CELL x CELL cell on a
+ * square grid with a fixed seed, so every run sees the same document.
+ */
+public final class CanvasWorkload implements Workload {
+
+    private static final int CELL = 48;
+    private static final int SWEEP = 64;          // sweeps use SWEEP x SWEEP points
+    private static final int PAIRS = 4096;
+    private static final Color[] PALETTE = {
+        Color.BLACK, Color.RED, Color.BLUE, new Color(0, 140, 0), Color.ORANGE, Color.MAGENTA, Color.GRAY, Color.CYAN
+    };
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 14);
+
+    private canvasex.CanvasView cv;
+    private BufferedImage out;
+    private canvasex.DrawingShape[] pairShapes;
+    private Point[] pairPoints;
+    private Point[] worldGrid;
+    private Point[] screenGrid;
+
+    @Override public void setUp(ShapeType type, int count, int width, int height, boolean fit) {
+        cv = new canvasex.CanvasView();
+        cv.setSize(width, height);
+        Random r = new Random(42);
+        int cols = (int) Math.ceil(Math.sqrt(count));
+
+        BufferedImage tile = null;
+        byte[] tileBytes = null;
+        if (type == ShapeType.IMAGE) {
+            tile = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = tile.createGraphics();
+            g.setColor(Color.ORANGE);
+            g.fillRect(0, 0, 32, 32);
+            g.setColor(Color.BLUE);
+            g.fillOval(4, 4, 24, 24);
+            g.dispose();
+            tileBytes = png(tile);
+        }
+
+        canvasex.DrawingShape[] doc = new canvasex.DrawingShape[count];
+        for (int i = 0; i < count; i++) {
+            int x = (i % cols) * CELL, y = (i / cols) * CELL;
+            Color c = PALETTE[i % PALETTE.length];
+            int size = 1 + r.nextInt(6);
+            doc[i] = switch (type) {
+                case LINE -> new canvasex.LineShape(p(x, y, r), p(x, y, r), c, size);
+                case STROKE -> {
+                    canvasex.StrokeShape s = new canvasex.StrokeShape(p(x, y, r), c, size);
+                    for (int k = 0; k < 15; k++) s.add(p(x, y, r));
+                    yield s;
+                }
+                case RECT -> new canvasex.RectShape(new Point(x + 2, y + 2), new Point(x + 8 + r.nextInt(CELL - 10), y + 8 + r.nextInt(CELL - 10)), c, size);
+                case OVAL -> new canvasex.OvalShape(new Point(x + 2, y + 2), new Point(x + 8 + r.nextInt(CELL - 10), y + 8 + r.nextInt(CELL - 10)), c, size);
+                case TEXT -> new canvasex.TextShape("Text " + i, new Point(x + 2, y + 20), c, FONT);
+                case IMAGE -> {
+                    canvasex.CanvasView.ImageShape s = new canvasex.CanvasView.ImageShape(x + 4, y + 4, 32 + r.nextInt(8), 32 + r.nextInt(8));
+                    s.img = tile;
+                    s.imgBytes = tileBytes;
+                    yield s;
+                }
+            };
+            cv.addShape(doc[i]);
+        }
+        if (fit) cv.zoomToFit();
+
+        out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        pairShapes = new canvasex.DrawingShape[PAIRS];
+        pairPoints = new Point[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            canvasex.DrawingShape s = doc[r.nextInt(count)];
+            Rectangle b = s.getBounds();
+            pairShapes[i] = s;
+            pairPoints[i] = new Point(b.x - 4 + r.nextInt(b.width + 8), b.y - 4 + r.nextInt(b.height + 8));
+        }
+
+        int extent = cols * CELL;
+        worldGrid = new Point[SWEEP * SWEEP];
+        screenGrid = new Point[SWEEP * SWEEP];
+        for (int j = 0; j < SWEEP; j++) {
+            for (int i = 0; i < SWEEP; i++) {
+                worldGrid[j * SWEEP + i] = new Point(i * extent / SWEEP + CELL / 3, j * extent / SWEEP + CELL / 3);
+                screenGrid[j * SWEEP + i] = new Point(i * width / SWEEP, j * height / SWEEP);
+            }
+        }
+    }
+
+    private static Point p(int x, int y, Random r) {
+        return new Point(x + r.nextInt(CELL - 4), y + r.nextInt(CELL - 4));
+    }
+
+    private static byte[] png(BufferedImage img) {
+        try {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", b);
+            return b.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override public BufferedImage paint(boolean cold) {
+        if (cold) {
+            cv.tileCache.clear();
+            cv.invalidateLayer();
+        }
+        Graphics2D g = out.createGraphics();
+        g.setClip(0, 0, out.getWidth(), out.getHeight());
+        cv.paintComponent(g);
+        g.dispose();
+        return out;
+    }
+
+    @Override public int containsSweep() {
+        int hits = 0;
+        for (int i = 0; i < PAIRS; i++) if (cv.shapeContains(pairShapes[i], pairPoints[i])) hits++;
+        return hits;
+    }
+
+    @Override public int hitTestSweep() {
+        int hits = 0;
+        for (Point p : worldGrid) if (cv.shapeAt(p) != null) hits++;
+        return hits;
+    }
+
+    @Override public long toWorldSweep() {
+        long sum = 0;
+        for (Point p : screenGrid) {
+            Point w = cv.toWorld(p);
+            sum += w.x + 31L * w.y;
+        }
+        return sum;
+    }
+
+    @Override public void save(File file) throws Exception {
+        canvasex.writeProject(file, new canvasex.ProjectData(cv.shapes, cv.scale, cv.offX, cv.offY,
+                cv.penSize, cv.color, cv.textColor, cv.fontSize, cv.fontFamily, cv.fontStyle));
+    }
+
+    @Override public int load(File file) throws Exception {
+        return canvasex.readProject(file).shapes.size();
+    }
+}
@@ -0,0 +1,59 @@
+package freeplay.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selection paths: shapeContains on 4096 (shape, nearby point) pairs, shapeAt (spatial index +
+ * shapeContains) over a 64x64 grid of world points, and toWorld over a 64x64 grid of screen points.
+ * Scores are per sweep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx3g" })
+public class HitTestBenchmark {
+
+    @Param({ "LINE", "STROKE", "RECT", "OVAL", "TEXT", "IMAGE" })
+    public Workload.ShapeType type;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int shapes;
+
+    private Workload w;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        w = Workload.create();
+        w.setUp(type, shapes, 1280, 800, false);
+    }
+
+    @Benchmark
+    public int shapeContains() {
+        return w.containsSweep();
+    }
+
+    @Benchmark
+    public int hitTest() {
+        return w.hitTestSweep();
+    }
+
+    @Benchmark
+    public long toWorld() {
+        return w.toWorldSweep();
+    }
+}
@@ -0,0 +1,60 @@
+package freeplay.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CanvasView.paintComponent into a 1280x800 offscreen image.
+ * paintCold re-renders every visible shape (committed layer and tile cache dropped first),
+ * paintCached is the steady state of an overlay-only repaint (layer blit).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx3g" })
+public class PaintBenchmark {
+
+    @Param({ "LINE", "STROKE", "RECT", "OVAL", "TEXT", "IMAGE" })
+    public Workload.ShapeType type;
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int shapes;
+
+    /** FIT: whole document visible (LOD / greeking), ONE_TO_ONE: 100% zoom at the origin. */
+    @Param({ "FIT", "ONE_TO_ONE" })
+    public String view;
+
+    private Workload w;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        w = Workload.create();
+        w.setUp(type, shapes, 1280, 800, view.equals("FIT"));
+        w.paint(true);
+    }
+
+    @Benchmark
+    public BufferedImage paintCold() {
+        return w.paint(true);
+    }
+
+    @Benchmark
+    public BufferedImage paintCached() {
+        return w.paint(false);
+    }
+}
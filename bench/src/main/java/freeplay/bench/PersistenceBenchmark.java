@@ -0,0 +1,72 @@
+package freeplay.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ProjectData save / load (the format of Ctrl+S and the autosave) through a temp file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx3g" })
+public class PersistenceBenchmark {
+
+    @Param({ "LINE", "STROKE", "RECT", "OVAL", "TEXT", "IMAGE" })
+    public Workload.ShapeType type;
+
+    @Param({ "1000", "10000", "100000" })
+    public int shapes;
+
+    private Workload w;
+    private File saved, scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        w = Workload.create();
+        w.setUp(type, shapes, 1280, 800, false);
+        saved = File.createTempFile("freeplay-bench", ".cvs");
+        scratch = File.createTempFile("freeplay-bench", ".cvs");
+        w.save(saved);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        saved.delete();
+        scratch.delete();
+    }
+
+    @Benchmark
+    public long save() throws Exception {
+        w.save(scratch);
+        return scratch.length();
+    }
+
+    @Benchmark
+    public int load() throws Exception {
+        return w.load(saved);
+    }
+
+    @Benchmark
+    public int roundTrip() throws Exception {
+        w.save(scratch);
+        return w.load(scratch);
+    }
+}
@@ -0,0 +1,44 @@
+package freeplay.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Workload — what the benchmarks drive. The app lives in the default package, which a named
+ * package (and JMH's generated code) cannot import, so the implementation is the default-package
+ * class CanvasWorkload, loaded by name.
+ */
+public interface Workload {
+
+    /** Shape types of the synthetic documents (one DrawingShape class each). */
+    enum ShapeType { LINE, STROKE, RECT, OVAL, TEXT, IMAGE }
+
+    /** Builds a CanvasView of width x height with a document of count shapes; fit = zoom to fit, else 1:1. */
+    void setUp(ShapeType type, int count, int width, int height, boolean fit);
+
+    /** paintComponent into an offscreen image; cold drops the committed layer and tile cache first. */
+    BufferedImage paint(boolean cold);
+
+    /** shapeContains over prepared (shape, point) pairs; returns the number of hits. */
+    int containsSweep();
+
+    /** Topmost-shape hit test over a grid of world points; returns the number of hits. */
+    int hitTestSweep();
+
+    /** toWorld over a grid of screen points; returns a checksum. */
+    long toWorldSweep();
+
+    /** Writes the document as ProjectData (the autosave / Ctrl+S format). */
+    void save(File file) throws Exception;
+
+    /** Reads a ProjectData file back; returns the number of shapes. */
+    int load(File file) throws Exception;
+
+    static Workload create() {
+        try {
+            return (Workload) Class.forName("CanvasWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("CanvasWorkload not on the classpath", e);
+        }
+    }
+}